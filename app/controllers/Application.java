@@ -4,86 +4,166 @@ import engine.easy.search.*;
 import engine.easy.indexer.*;
 import engine.easy.util.*;
 import engine.easy.analyzer.*;
+import engine.easy.metrics.SearchMetrics;
 import engine.easy.ranking_model.BM25;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import play.*;
 import play.mvc.*;
 
 import java.util.*;
 
+import jobs.Bootstrap;
 import models.*;
 
 public class Application extends Controller {
 
     static public EasySearchEngine engine = new EasySearchEngine();
-    public static Date before;
-    public static Date after;
-    public static String time=null;
-    public static long t=0;
+
+    /** The searches run on a bounded executor, a request is answered 503 when it is saturated or a search is too slow. */
+    static SearchExecutor searchExecutor = new SearchExecutor(
+            Integer.parseInt(Play.configuration.getProperty("search.threads", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+            Integer.parseInt(Play.configuration.getProperty("search.queue", String.valueOf(SearchExecutor.DEFAULT_QUEUE_DEPTH))),
+            Long.parseLong(Play.configuration.getProperty("search.timeout", String.valueOf(SearchExecutor.DEFAULT_TIMEOUT_MILLIS))));
     
-    @Before
-    public static void loaddefault() {
-        File indexBank = new File(AppConstants.INDEX_DIR_PATH);
-        if (!indexBank.exists()) {
-            try {
-                EasySearchIndexBuilder.createIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-            }
-        } else {
-            System.out.println("Indexes exist!!!!!");
+    /**
+     * Answer 503 until the startup job has built and warmed the index (see Bootstrap).
+     */
+    @Before(unless = {"ready", "metrics"})
+    static void checkReady() {
+        if (!Bootstrap.isReady()) {
+            response.status = 503;
+            response.setHeader("Retry-After", "5");
+            renderText("The search engine is not ready: " + Bootstrap.getStatus());
+        }
+    }
+
+    public static void ready() {
+        if (!Bootstrap.isReady()) {
+            response.status = 503;
         }
+        renderText(Bootstrap.getStatus());
     }
     
     public static void index() {
         render();
     }
     
-    public static void query(String query) {
-        System.out.println("params---" + params.allSimple());
+    public static void query(String query, String eval, Integer start, Integer rows, String cursor) {
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("query params=%s", params.allSimple());
+        }
         
         if (query == null) {
             index();
         }
-        Result[] results=null;
+        final String text = query;
+        final boolean feedback = params._contains("rf");
+        final QueryEvaluation evaluation = QueryEvaluation.parse(eval);
+        final SearchCursor after = SearchCursor.parse(cursor);
+        // the offset of a page without a cursor is bounded, the Next links carry the cursor to the deeper pages.
+        final int maxStart = after != null ? Integer.MAX_VALUE - EasySearchEngine.MAX_ROWS : EasySearchEngine.MAX_START;
+        final int first = start != null ? Math.max(0, Math.min(start, maxStart)) : 0;
+        final int size = rows != null ? Math.max(1, Math.min(rows, EasySearchEngine.MAX_ROWS)) : AppConstants.TOP_RESULTS;
+        String nextCursor = null;
      
-            before = new Date();
-            System.out.println("before--------" + before);
+            long begin = System.nanoTime();
            // String[] suggestions = engine.getSuggestions(query);
            
-            if (params._contains("rf")) {
-                results = engine.performPesudoRelevanceFeedback(query);
-            }else{
-                
-            results = engine.performSearch(query); 
+            // the search runs on the search executor, the request thread is released while it waits.
+            SearchExecutor.TimedFuture<Result[]> future = submit("query", new Callable<Result[]>() {
+                public Result[] call() {
+                    if (feedback) {
+                        return engine.performPesudoRelevanceFeedback(text);
+                    }
+                    return engine.performSearch(text, evaluation, first, size, after);
+                }
+            });
+            Result[] results = await(future);
+            checkTimeout("query", future);
+
+            if (!feedback && results != null && results.length == size) {
+                nextCursor = SearchCursor.after(results).toString();
             }
-            after = new Date();
-            t = after.getTime() - before.getTime();
-          
-            time=String.valueOf(t);
-          
-              System.out.println("query time=============="+time);
-            render("Application/index.html",results,time);
+            long elapsed = System.nanoTime() - begin;
+            SearchMetrics.recordRequest("query", elapsed);
+            String time = String.valueOf(elapsed / 1000000L);
+            render("Application/index.html",results,time,first,size,nextCursor);
     }
        
        
 
     
     
+    public static void suggest(String prefix) {
+        long begin = System.nanoTime();
+        String[] suggestions = engine.getCompletions(prefix, AutoCompleter.DEFAULT_COMPLETIONS);
+        SearchMetrics.recordRequest("suggest", System.nanoTime() - begin);
+        render("Application/sug.html", suggestions);
+    }
+
+    /**
+     * Suggest the spelling of a word, from the dictionary or with mode=collection from the terms of the index.
+     */
+    public static void spell(String word, String mode) throws IOException {
+        long begin = System.nanoTime();
+        String[] suggestions = word != null ? engine.getSuggestions(word, SuggestionMode.parse(mode)) : null;
+        if (suggestions == null) {
+            suggestions = new String[0];
+        }
+        SearchMetrics.recordRequest("spell", System.nanoTime() - begin);
+        render("Application/sug.html", suggestions);
+    }
+
+    /**
+     * Submit a search to the search executor, the request is answered busy when the executor queue is full.
+     */
+    private static SearchExecutor.TimedFuture<Result[]> submit(String action, Callable<Result[]> search) {
+        try {
+            return searchExecutor.submit(search);
+        } catch (RejectedExecutionException e) {
+            busy(action, "rejected");
+            return null;
+        }
+    }
+
+    /**
+     * Answer the request busy when its search did not finish in time.
+     */
+    private static void checkTimeout(String action, SearchExecutor.TimedFuture<Result[]> future) {
+        if (future.isTimedOut()) {
+            busy(action, "timeout");
+        }
+    }
+
+    private static void busy(String action, String reason) {
+        Logger.warn("%s answered busy (%s), %d searches queued", action, reason, searchExecutor.getQueueSize());
+        SearchMetrics.recordShed(action, reason);
+        response.status = 503;
+        response.setHeader("Retry-After", "1");
+        renderText("The search engine is busy, please retry.");
+    }
+
+    public static void metrics() {
+        response.contentType = SearchMetrics.CONTENT_TYPE;
+        renderText(SearchMetrics.toPrometheus());
+    }
+
     public static void userRelevanceFeedback(String ids) {
-        System.out.println("params:" + params.allSimple());
-        System.out.println("user relevance-----");
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("userRelevanceFeedback params=%s", params.allSimple());
+        }
         
         if (ids == null || ids.isEmpty()) {
             index();
         }
-        before=new Date();
-        System.out.println("ids======" + ids);
+        long begin = System.nanoTime();
         
-        Map<Integer, Float> docIds = new HashMap<Integer, Float>();
+        final Map<Integer, Float> docIds = new HashMap<Integer, Float>();
         String[] Ids = ids.split(",");
         for (String id : Ids) {
             Integer ID=Math.abs(Integer.parseInt(id));
@@ -98,10 +178,16 @@ public class Application extends Controller {
             }
             
         }
-        Result[] results = engine.performUserRelevanceFeedback(docIds);
-        after=new Date();
-        t=after.getTime()- before.getTime();
-          System.out.println("query time=============="+time);
+        SearchExecutor.TimedFuture<Result[]> future = submit("userRelevanceFeedback", new Callable<Result[]>() {
+            public Result[] call() {
+                return engine.performUserRelevanceFeedback(docIds);
+            }
+        });
+        Result[] results = await(future);
+        checkTimeout("userRelevanceFeedback", future);
+        long elapsed = System.nanoTime() - begin;
+        SearchMetrics.recordRequest("userRelevanceFeedback", elapsed);
+        String time = String.valueOf(elapsed / 1000000L);
         render("Application/index.html", results, time);
         
     }
@@ -0,0 +1,198 @@
+package engine.easy.analyzer;
+
+/**
+ * <p>
+ * This is a TokenRecorder class which consumes an analyzed token stream once, records its tokens into primitive
+ * arrays and counts the tokens and the unique terms on the way.
+ * </p>
+ *
+ * <p>
+ * The recorded tokens are replayed to the index writer with {@link #replay()}, so a field is analyzed only once
+ * although both the extra data statistics and the lucene index need its tokens. The unique terms are counted with
+ * an open addressing table over the recorded term characters, no String is created for a token. A recorder keeps
+ * its arrays between the documents and is meant to be used by one thread at a time.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+
+public class TokenRecorder {
+
+	private char[] termChars = new char[4096];
+	private int[] termStarts = new int[512];
+	private int[] termLengths = new int[512];
+	private int[] positionIncrements = new int[512];
+	private int[] startOffsets = new int[512];
+	private int[] endOffsets = new int[512];
+	private int[] uniqueTable = new int[1024];	// token index + 1 of the first token of each unique term, 0 if empty
+
+	private int tokenCount;
+	private int charCount;
+	private int uniqueTermCount;
+	private int finalOffset;
+
+	/**
+	 * Consume the token stream and record all its tokens, the previous recording is discarded.
+	 *
+	 * @param tokenStream the analyzed token stream, it is ended and closed by the recorder.
+	 * @throws IOException if the token stream could not be read.
+	 */
+	public void record(TokenStream tokenStream) throws IOException {
+		tokenCount = 0;
+		charCount = 0;
+		uniqueTermCount = 0;
+		Arrays.fill(uniqueTable, 0);
+
+		TermAttribute termAtt = tokenStream.addAttribute(TermAttribute.class);
+		PositionIncrementAttribute posIncrAtt = tokenStream.addAttribute(PositionIncrementAttribute.class);
+		OffsetAttribute offsetAtt = tokenStream.addAttribute(OffsetAttribute.class);
+
+		try {
+			while (tokenStream.incrementToken()) {
+				int length = termAtt.termLength();
+				ensureCapacity(length);
+
+				System.arraycopy(termAtt.termBuffer(), 0, termChars, charCount, length);
+				termStarts[tokenCount] = charCount;
+				termLengths[tokenCount] = length;
+				positionIncrements[tokenCount] = posIncrAtt.getPositionIncrement();
+				startOffsets[tokenCount] = offsetAtt.startOffset();
+				endOffsets[tokenCount] = offsetAtt.endOffset();
+				charCount += length;
+
+				countUniqueTerm(tokenCount);
+				tokenCount++;
+			}
+			tokenStream.end();
+			finalOffset = offsetAtt.endOffset();
+		} finally {
+			tokenStream.close();
+		}
+	}
+
+	/**
+	 * @return the number of the recorded tokens.
+	 */
+	public int tokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * @return the number of the unique terms among the recorded tokens.
+	 */
+	public int uniqueTermCount() {
+		return uniqueTermCount;
+	}
+
+	/**
+	 * Get a token stream which replays the recorded tokens. The stream reads the recorder arrays, so it must be
+	 * consumed before the next recording.
+	 *
+	 * @return the replaying token stream.
+	 */
+	public TokenStream replay() {
+		return new ReplayTokenStream();
+	}
+
+	private void countUniqueTerm(int token) {
+		if ((uniqueTermCount + 1) * 2 > uniqueTable.length)
+			rehash();
+
+		int mask = uniqueTable.length - 1;
+		int slot = hash(token) & mask;
+		while (uniqueTable[slot] != 0) {
+			if (sameTerm(uniqueTable[slot] - 1, token))
+				return;
+			slot = (slot + 1) & mask;
+		}
+		uniqueTable[slot] = token + 1;
+		uniqueTermCount++;
+	}
+
+	private void rehash() {
+		int[] oldTable = uniqueTable;
+		uniqueTable = new int[oldTable.length << 1];
+		int mask = uniqueTable.length - 1;
+		for (int entry : oldTable) {
+			if (entry != 0) {
+				int slot = hash(entry - 1) & mask;
+				while (uniqueTable[slot] != 0)
+					slot = (slot + 1) & mask;
+				uniqueTable[slot] = entry;
+			}
+		}
+	}
+
+	private int hash(int token) {
+		int h = 0;
+		int end = termStarts[token] + termLengths[token];
+		for (int i = termStarts[token]; i < end; i++)
+			h = 31 * h + termChars[i];
+		return h ^ (h >>> 16);
+	}
+
+	private boolean sameTerm(int token1, int token2) {
+		int length = termLengths[token1];
+		if (length != termLengths[token2])
+			return false;
+		int start1 = termStarts[token1];
+		int start2 = termStarts[token2];
+		for (int i = 0; i < length; i++) {
+			if (termChars[start1 + i] != termChars[start2 + i])
+				return false;
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int termLength) {
+		if (charCount + termLength > termChars.length)
+			termChars = Arrays.copyOf(termChars, Math.max(termChars.length << 1, charCount + termLength));
+
+		if (tokenCount == termStarts.length) {
+			int size = termStarts.length << 1;
+			termStarts = Arrays.copyOf(termStarts, size);
+			termLengths = Arrays.copyOf(termLengths, size);
+			positionIncrements = Arrays.copyOf(positionIncrements, size);
+			startOffsets = Arrays.copyOf(startOffsets, size);
+			endOffsets = Arrays.copyOf(endOffsets, size);
+		}
+	}
+
+	/**
+	 * The token stream which replays the recorded tokens with their positions and offsets.
+	 */
+	private class ReplayTokenStream extends TokenStream {
+
+		private final TermAttribute termAtt = addAttribute(TermAttribute.class);
+		private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+		private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+		private int next;
+
+		public boolean incrementToken() {
+			if (next >= tokenCount)
+				return false;
+
+			clearAttributes();
+			termAtt.setTermBuffer(termChars, termStarts[next], termLengths[next]);
+			posIncrAtt.setPositionIncrement(positionIncrements[next]);
+			offsetAtt.setOffset(startOffsets[next], endOffsets[next]);
+			next++;
+			return true;
+		}
+
+		public void end() {
+			offsetAtt.setOffset(finalOffset, finalOffset);
+		}
+
+		public void reset() {
+			next = 0;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package engine.easy.benchmark;
+
+/**
+ * <p>
+ * This is a Benchmark class which describes one measured operation of the search engine for the BenchmarkRunner.
+ * </p>
+ *
+ * <p>
+ * The state an operation needs is created in {@link #setUp()} and released in {@link #tearDown()}, outside of the
+ * measurement. The result of every operation is consumed by the runner, so the JIT can not remove the operation.
+ * A single shot benchmark runs its operation once per iteration, for the operations which last seconds.
+ * </p>
+ *
+ */
+
+public abstract class Benchmark {
+
+	private final String name;
+	private final boolean singleShot;
+
+	protected Benchmark(String name) {
+		this(name, false);
+	}
+
+	protected Benchmark(String name, boolean singleShot) {
+		this.name = name;
+		this.singleShot = singleShot;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isSingleShot() {
+		return singleShot;
+	}
+
+	/**
+	 * Prepare the state of the operation, it is not measured.
+	 *
+	 * @throws Exception if one is thrown.
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Run the measured operation once.
+	 *
+	 * @return the result of the operation, consumed by the runner.
+	 * @throws Exception if one is thrown.
+	 */
+	public abstract Object run() throws Exception;
+
+	/**
+	 * @return the number of processed units (tokens, documents) of the last operation, or 0 for none.
+	 */
+	public long units() {
+		return 0L;
+	}
+
+	/**
+	 * @return the name of the processed units.
+	 */
+	public String unitName() {
+		return "units";
+	}
+
+	/**
+	 * Release the state of the operation, it is not measured.
+	 *
+	 * @throws Exception if one is thrown.
+	 */
+	public void tearDown() throws Exception {
+	}
+}
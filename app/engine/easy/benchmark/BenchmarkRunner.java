@@ -0,0 +1,146 @@
+package engine.easy.benchmark;
+
+/**
+ * <p>
+ * This is a BenchmarkRunner class which measures the time and the heap allocation of each benchmark operation.
+ * </p>
+ *
+ * <p>
+ * Each benchmark first runs its warm-up iterations, so the measured code is compiled by the JIT, and then its
+ * measured iterations. An iteration repeats the operation in batches until the iteration time is over, the batch
+ * size grows during the warm-up until a batch lasts about a milli second, so reading the clock does not weigh on
+ * short operations. The allocation is the number of bytes the measuring thread allocated, as reported by the
+ * ThreadMXBean of the JVM.
+ * </p>
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+public class BenchmarkRunner {
+
+	/** The default number of warm-up and measured iterations, and the length of an iteration in milli seconds. */
+	public static final int DEFAULT_WARMUP_ITERATIONS = 3;
+	public static final int DEFAULT_MEASURE_ITERATIONS = 5;
+	public static final long DEFAULT_ITERATION_MILLIS = 1000L;
+
+	private static final long BATCH_NANOS = 1000000L;
+
+	private final int warmupIterations;
+	private final int measureIterations;
+	private final long iterationNanos;
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/** The results of the operations are folded in here, so the JIT can not remove them. */
+	private volatile int sink;
+
+	public BenchmarkRunner() {
+		this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_MEASURE_ITERATIONS, DEFAULT_ITERATION_MILLIS);
+	}
+
+	public BenchmarkRunner(int warmupIterations, int measureIterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.measureIterations = Math.max(1, measureIterations);
+		this.iterationNanos = iterationMillis * 1000000L;
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			this.threadBean = (com.sun.management.ThreadMXBean) bean;
+			this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			this.threadBean = null; // the allocation is not reported on this JVM.
+		}
+	}
+
+	/**
+	 * Run the benchmarks one after the other and print a line of results for each.
+	 *
+	 * @param benchmarks the benchmarks to run.
+	 */
+	public void run(List<Benchmark> benchmarks) {
+		System.out.println(String.format("%-32s %16s %12s %16s %16s", "Benchmark", "ns/op", "+/- ns/op", "B/op", "units/s"));
+
+		for (Benchmark benchmark : benchmarks) {
+			try {
+				benchmark.setUp();
+				try {
+					System.out.println(measure(benchmark));
+				} finally {
+					benchmark.tearDown();
+				}
+			} catch (Exception e) {
+				System.out.println("Exception: " + benchmark.getName() + " " + e.toString());
+			}
+		}
+	}
+
+	private String measure(Benchmark benchmark) throws Exception {
+		int batch = 1;
+		System.gc();
+
+		for (int i = 0; i < warmupIterations; i++) {
+			long deadline = System.nanoTime() + iterationNanos;
+			do {
+				long start = System.nanoTime();
+				runBatch(benchmark, batch);
+				if (!benchmark.isSingleShot() && System.nanoTime() - start < BATCH_NANOS && batch < (1 << 24))
+					batch <<= 1;
+			} while (!benchmark.isSingleShot() && System.nanoTime() < deadline);
+		}
+		if (benchmark.isSingleShot())
+			batch = 1;
+
+		double[] nanosPerOp = new double[measureIterations];
+		long totalOps = 0L;
+		long totalUnits = 0L;
+		long totalNanos = 0L;
+		long totalBytes = 0L;
+
+		for (int i = 0; i < measureIterations; i++) {
+			long ops = 0L;
+			long units = 0L;
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			long deadline = start + iterationNanos;
+			do {
+				units += runBatch(benchmark, batch);
+				ops += batch;
+			} while (!benchmark.isSingleShot() && System.nanoTime() < deadline);
+			long elapsed = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes;
+
+			nanosPerOp[i] = (double) elapsed / ops;
+			totalOps += ops;
+			totalUnits += units;
+			totalNanos += elapsed;
+			totalBytes += bytes;
+		}
+
+		double mean = (double) totalNanos / totalOps;
+		double variance = 0d;
+		for (double value : nanosPerOp)
+			variance += (value - mean) * (value - mean);
+		double deviation = Math.sqrt(variance / nanosPerOp.length);
+
+		String bytesPerOp = threadBean == null ? "n/a" : String.format("%.1f", (double) totalBytes / totalOps);
+		String unitsPerSecond = totalUnits == 0L ? "" : String.format("%.0f %s", totalUnits * 1e9d / totalNanos, benchmark.unitName());
+		return String.format("%-32s %16.1f %12.1f %16s %16s", benchmark.getName(), mean, deviation, bytesPerOp, unitsPerSecond);
+	}
+
+	private long runBatch(Benchmark benchmark, int batch) throws Exception {
+		long units = 0L;
+		int hash = 0;
+		for (int i = 0; i < batch; i++) {
+			Object result = benchmark.run();
+			hash ^= System.identityHashCode(result);
+			units += benchmark.units();
+		}
+		sink ^= hash;
+		return units;
+	}
+
+	private long allocatedBytes() {
+		return threadBean == null ? 0L : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,250 @@
+package engine.easy.benchmark;
+
+/**
+ * <p>
+ * This is a EasySearchBenchmarks class which measures the query and the indexing hot paths of the search engine on
+ * the bundled data bank, as the baseline to judge every optimization against.
+ * </p>
+ *
+ * <p>
+ * The index of the data bank is brought up to date before the benchmarks run. The benchmarks cover the ranking of a
+ * short and a long query in each evaluation mode, the pseudo and the user relevance feedback (with the result cache
+ * cleared on each iteration), the document length lookup, the BM25 formula, the analyzer token throughput and a full
+ * index build. A benchmark name prefix can be given as argument to run only some of the benchmarks, for example
+ * "search." or "build".
+ * </p>
+ *
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+
+import engine.easy.analyzer.EasySearchAnalyzer;
+import engine.easy.indexer.EasySearchIndexBuilder;
+import engine.easy.indexer.IncrementalIndexBuilder;
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.ranking_model.BM25;
+import engine.easy.search.EasySearchEngine;
+import engine.easy.search.EasySearcherManager;
+import engine.easy.search.QueryEvaluation;
+import engine.easy.search.Result;
+import engine.easy.util.AppConstants;
+
+public class EasySearchBenchmarks {
+
+	public static final String SHORT_QUERY = "nasser egypt";
+	public static final String LONG_QUERY = "KENNEDY ADMINISTRATION PRESSURE ON NGO DINH DIEM TO STOP SUPPRESSING THE BUDDHISTS .";
+
+	/** The number of data bank documents analyzed by the analyzer benchmark. */
+	private static final int ANALYZER_SAMPLE_DOCUMENTS = 50;
+
+	private static EasySearchEngine engine;
+	private static EasySearcherManager manager;
+
+	/**
+	 * Create the benchmarks of the search engine.
+	 *
+	 * @return the benchmarks.
+	 */
+	public static List<Benchmark> benchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		for (QueryEvaluation evaluation : QueryEvaluation.values()) {
+			benchmarks.add(new SearchBenchmark("search.short." + evaluation, SHORT_QUERY, evaluation));
+			benchmarks.add(new SearchBenchmark("search.long." + evaluation, LONG_QUERY, evaluation));
+		}
+
+		benchmarks.add(new Benchmark("feedback.pseudo") {
+			public Object run() {
+				// the feedback results are cached, each iteration expands and ranks the query again.
+				engine.getResultCache().clear();
+				return engine.performPesudoRelevanceFeedback(SHORT_QUERY);
+			}
+		});
+
+		benchmarks.add(new Benchmark("feedback.user") {
+			private Map<Integer, Float> documents;
+
+			public void setUp() {
+				// the top three results judged relevant, as the user relevance form sends them.
+				documents = new HashMap<Integer, Float>();
+				Result[] results = engine.performSearch(SHORT_QUERY);
+				for (int i = 0; i < results.length && i < 3; i++)
+					documents.put(results[i].getId(), results[i].getId() / AppConstants.RESULTS_SIZE);
+			}
+
+			public Object run() {
+				engine.getResultCache().clear();
+				return engine.performUserRelevanceFeedback(documents);
+			}
+		});
+
+		benchmarks.add(new ReaderBenchmark("reader.docLength") {
+			private int docid;
+			private long sum;
+
+			public Object run() throws Exception {
+				if (++docid >= ixReader.maxDoc())
+					docid = 0;
+				sum += esiReader.docLength(docid, AppConstants.CONTENT_FIELD);
+				return this;
+			}
+		});
+
+		benchmarks.add(new Benchmark("bm25.score") {
+			private final BM25 bm25 = new BM25();
+			private int tf;
+			private double sum;
+
+			public Object run() {
+				tf = (tf + 1) & 15;
+				sum += bm25.score(tf + 1, 423d, 180d + tf, 250d, 1d, 12d);
+				return this;
+			}
+		});
+
+		benchmarks.add(new Benchmark("analyzer.tokens") {
+			private final Analyzer analyzer = new EasySearchAnalyzer();
+			private final List<String> texts = new ArrayList<String>();
+			private int next;
+			private long tokens;
+
+			public void setUp() throws Exception {
+				IndexReader ixReader = manager.acquire();
+				try {
+					for (int docid = 0; docid < ixReader.maxDoc() && texts.size() < ANALYZER_SAMPLE_DOCUMENTS; docid++) {
+						if (!ixReader.isDeleted(docid))
+							texts.add(ixReader.document(docid).get(AppConstants.CONTENT_FIELD));
+					}
+				} finally {
+					manager.release(ixReader);
+				}
+			}
+
+			public Object run() throws Exception {
+				String text = texts.get(next);
+				next = (next + 1) % texts.size();
+
+				tokens = 0L;
+				TokenStream tokenStream = analyzer.tokenStream(AppConstants.CONTENT_FIELD, new StringReader(text));
+				while (tokenStream.incrementToken())
+					tokens++;
+				tokenStream.close();
+				return tokenStream;
+			}
+
+			public long units() {
+				return tokens;
+			}
+
+			public String unitName() {
+				return "tokens/s";
+			}
+		});
+
+		benchmarks.add(new Benchmark("build.full", true) {
+			private File indexDir;
+
+			public void setUp() {
+				indexDir = new File(System.getProperty("java.io.tmpdir"), "easy-search-benchmark-index");
+			}
+
+			public Object run() throws Exception {
+				EasySearchIndexBuilder.createIndexes(AppConstants.DATA_BANK_DIR_PATH, indexDir.getPath());
+				return indexDir;
+			}
+
+			public void tearDown() {
+				File[] files = indexDir.listFiles();
+				if (files != null) {
+					for (File file : files)
+						file.delete();
+				}
+				indexDir.delete();
+			}
+		});
+
+		return benchmarks;
+	}
+
+	/**
+	 * The benchmarks using a reader acquired from the searcher manager.
+	 */
+	private static abstract class ReaderBenchmark extends Benchmark {
+
+		protected IndexReader ixReader;
+		protected EasySearchIndexReader esiReader;
+
+		ReaderBenchmark(String name) {
+			super(name);
+		}
+
+		public void setUp() throws Exception {
+			ixReader = manager.acquire();
+			esiReader = new EasySearchIndexReader(ixReader);
+		}
+
+		public void tearDown() throws Exception {
+			manager.release(ixReader);
+		}
+	}
+
+	/**
+	 * The ranking of a parsed query, without the query parsing and the reader acquisition.
+	 */
+	private static class SearchBenchmark extends ReaderBenchmark {
+
+		private final String queryText;
+		private final QueryEvaluation evaluation;
+		private Query query;
+
+		SearchBenchmark(String name, String queryText, QueryEvaluation evaluation) {
+			super(name);
+			this.queryText = queryText;
+			this.evaluation = evaluation;
+		}
+
+		public void setUp() throws Exception {
+			super.setUp();
+			query = new QueryParser(Version.LUCENE_30, AppConstants.CONTENT_FIELD, new EasySearchAnalyzer()).parse(queryText);
+		}
+
+		public Object run() {
+			return engine.getResults(query, ixReader, esiReader, null, evaluation);
+		}
+	}
+
+	public static void main(String[] args) {
+
+		try {
+			// optional argument: the name prefix of the benchmarks to run.
+			String prefix = args.length > 0 ? args[0] : "";
+
+			IncrementalIndexBuilder.updateIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
+			engine = new EasySearchEngine();
+			manager = EasySearcherManager.getInstance();
+
+			List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+			for (Benchmark benchmark : benchmarks()) {
+				if (benchmark.getName().startsWith(prefix))
+					benchmarks.add(benchmark);
+			}
+
+			new BenchmarkRunner().run(benchmarks);
+		} catch (Exception e) {
+			System.out.println("Exception : " + e.toString());
+		}
+		System.exit(0);
+	}
+}
@@ -20,6 +20,7 @@ import java.util.Enumeration;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
 
+import org.apache.log4j.Logger;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -37,13 +38,15 @@ import engine.easy.util.FileType;
 import engine.easy.util.Util;
 
 public class BasicIndexBuilder implements IndexBuilder {
+
+	private static final Logger log = Logger.getLogger(BasicIndexBuilder.class);
 	
 	public void createIndexes(String dataBankDirPath, String indexDirPath) throws IOException {
 		try {
 			
 			File dataBank = new File(dataBankDirPath);
 			if(!dataBank.exists()){
-				System.out.println("The specified data bank directory does not exist: " + dataBank);
+				log.warn("The specified data bank directory does not exist: " + dataBank);
 			}
 			
 			/*
@@ -86,7 +89,7 @@ public class BasicIndexBuilder implements IndexBuilder {
 			indexDir.close(); // close the index directory, so that the file lock will be released
 
 		} catch(Exception e){
-			e.printStackTrace();
+			log.error("createIndexes failed", e);
 		}
 	}
 	
@@ -95,7 +98,8 @@ public class BasicIndexBuilder implements IndexBuilder {
 		try {
 			FileReader fr = new FileReader(file);
 			String docid = file.getName(); 
-			System.out.println(" >> Indexing  "+ docid);
+			if (log.isDebugEnabled())
+				log.debug("Indexing " + docid);
 			
 			// Create a document for each index document.
 			Document doc = new Document();
@@ -112,7 +116,7 @@ public class BasicIndexBuilder implements IndexBuilder {
 			// Closed the buffer and inputstream.
 			fr.close();
 		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+			log.error("indexTextDocuments failed", e);
 		}
 	}
 	
@@ -129,7 +133,8 @@ public class BasicIndexBuilder implements IndexBuilder {
 				
 				entryCount++;
 				String docid = entry.getName(); 
-				System.out.println(" >> Indexing "+ entryCount + "/" + zipSrc.size() + " "+ docid);
+				if (log.isDebugEnabled())
+					log.debug("Indexing " + entryCount + "/" + zipSrc.size() + " " + docid);
 				
 				// read the content of each entry
 				InputStream inStream = zipSrc.getInputStream(entry);
@@ -154,7 +159,7 @@ public class BasicIndexBuilder implements IndexBuilder {
 			
 			zipSrc.close(); // close the zip file
 		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+			log.error("indexZipDocuments failed", e);
 		}
 	}
 	
@@ -164,7 +169,7 @@ public class BasicIndexBuilder implements IndexBuilder {
 			BasicIndexBuilder biBuilder = new BasicIndexBuilder();
 			biBuilder.createIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
 		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+			log.error("createIndexes failed", e);
 		}
 	}
 }
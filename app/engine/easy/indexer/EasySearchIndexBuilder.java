@@ -8,18 +8,13 @@ package engine.easy.indexer;
  * 
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.Enumeration;
+import java.io.InterruptedIOException;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
+import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -35,10 +30,13 @@ import org.apache.lucene.util.Version;
 import engine.easy.analyzer.EasySearchAnalyzer;
 import engine.easy.indexer.writer.EasySearchIndexWriter;
 import engine.easy.util.AppConstants;
-import engine.easy.util.FileType;
-import engine.easy.util.Util;
 
 public class EasySearchIndexBuilder  {
+
+	private static final Logger log = Logger.getLogger(EasySearchIndexBuilder.class);
+
+	/** The RAM buffer of the index writer in MB. */
+	public static final double INDEXING_RAM_BUFFER_MB = 48d;
 	
 	/**
 	 * Create the index for given collection of documents in the data bank.
@@ -46,12 +44,36 @@ public class EasySearchIndexBuilder  {
      * @throws IOException if the file would have any IO operation.
 	 */
 	public static void createIndexes(String dataBankDirPath, String indexDirPath) throws IOException {
+		createIndexes(dataBankDirPath, indexDirPath, false);
+	}
+
+	/**
+	 * Create the index for given collection of documents in the data bank, and optionally the BM25 impact
+	 * index of the default ranking parameters next to it.
+	 * 
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public static void createIndexes(String dataBankDirPath, String indexDirPath, boolean buildImpactIndex) throws IOException {
+		createIndexes(dataBankDirPath, indexDirPath, buildImpactIndex, 
+				IndexingPipeline.DEFAULT_READER_THREADS, IndexingPipeline.DEFAULT_ANALYZER_THREADS);
+	}
+
+	/**
+	 * Create the index for given collection of documents in the data bank with the given number of reader
+	 * and analyzer threads, and optionally the BM25 impact index of the default ranking parameters next to it.
+	 * The documents which fail are logged and retried by the next update, the build fails if none is indexed.
+	 * 
+     * @throws IOException if the index could not be built.
+	 */
+	public static void createIndexes(String dataBankDirPath, String indexDirPath, boolean buildImpactIndex, 
+			int readerThreads, int analyzerThreads) throws IOException {
 		try {
 			
 			File dataBank = new File(dataBankDirPath);
                        
 			if(!dataBank.exists()){
-				System.out.println("The specified data bank directory does not exist: " + dataBank);
+				// an empty index would be served as if it were complete.
+				throw new FileNotFoundException("The specified data bank directory does not exist: " + dataBank);
 			}
 			
 			/*
@@ -60,8 +82,8 @@ public class EasySearchIndexBuilder  {
 			 * 1- First step is to create a directory in lucene.
 			 * 2- Confirm that previously index writer is not closed properly, then unlock the directory.
 			 * 3- Now create an index writer on this directory.
-			 * 4- After that create an zip iterator for the collection of files in data bank and create
-			 * 	  the index for each file.
+			 * 4- After that run the indexing pipeline, the reader threads read the files and zip entries
+			 * 	  of the data bank and the analyzer threads create the index for each document.
 			 */
 
 			// Step1 - Create the index directory for given path.
@@ -75,118 +97,41 @@ public class EasySearchIndexBuilder  {
 			// Step3 - Now create an index writer on this directory using EasySearchAnalyzer() which
 			// will give you a custom text analyzer, that tokenize the text units.
 			IndexWriter indexWriter = new IndexWriter(indexDir, new EasySearchAnalyzer(), Boolean.TRUE, MaxFieldLength.UNLIMITED);
+			indexWriter.setRAMBufferSizeMB(INDEXING_RAM_BUFFER_MB); // a larger buffer flushes less often while the analyzer threads add documents.
 			EasySearchIndexWriter esiWrtier = new EasySearchIndexWriter(indexWriter);
 			
-			//Step4 - Now Iterate over the collecion of files and create the index for each file.
-			if (dataBank.isDirectory()) {
-				for (File file : dataBank.listFiles()) {
-					if (Util.getFileExtension(file).equalsIgnoreCase(FileType.ZIP)) {
-						indexZipDocuments(esiWrtier, file);
-					} 
-					else {
-						indexTextDocuments(esiWrtier, file);
-					}
-				}
+			//Step4 - Now run the pipeline over the collection of files and create the index for each document.
+			// The data bank is scanned first, so a file changed during the build is indexed again by the next delta.
+			IndexManifest manifest = IndexManifest.scan(dataBank, null);
+			IndexingPipeline pipeline = new IndexingPipeline(esiWrtier, readerThreads, analyzerThreads, IndexingPipeline.DEFAULT_QUEUE_CAPACITY);
+			int indexed = pipeline.run(dataBank);
+			if (indexed == 0 && !manifest.getEntries().isEmpty()) {
+				indexWriter.rollback();
+				indexDir.close();
+				throw new IOException("No document of " + dataBankDirPath + " could be indexed");
 			}
 
+			// the documents which failed to be read or indexed are left out of the manifest, so the next delta retries them.
+			int dropped = manifest.dropSources(pipeline.getFailedSources());
+			if (dropped > 0)
+				log.warn(dropped + " documents failed to be indexed and will be retried by the next update");
+
 			esiWrtier.close(); 
 			indexWriter.optimize(); // Optimze the index structure, which will enhance the efficiency of index but will cost on time.
-			System.out.println(" >> Finished .... ");
+			log.info("Finished indexing " + dataBankDirPath);
 			
 			indexWriter.close(); // close the indexwriter
 			indexDir.close(); // close the index directory, so that the file lock will be released
+			manifest.store(indexDirPath); // the manifest lets IncrementalIndexBuilder index only the later changes.
 
-		} catch(Exception e){
-			e.printStackTrace();
-		}
-	}
-	
-	private static String getText(Reader reader) throws IOException {
-		
-		StringBuffer sb = null;
-		
-		try {
-			if (reader != null) {
-				sb = new StringBuffer("");
-				BufferedReader br = new BufferedReader(reader); 
-				String s; 
-				while((s = br.readLine()) != null) { 
-					sb.append(s);
-				} 
+			// Step5 - Precompute the BM25 impact of every posting for the query time impact scoring.
+			if (buildImpactIndex) {
+				ImpactIndexBuilder.createImpactIndex(indexDirPath);
 			}
-		} catch (Exception e) {
-			System.out.println("Exception : getText" + e.toString());
-		}
-		
-		System.out.println(sb.toString());
-		return sb.toString();
-	}
 
-	private static void indexTextDocuments(EasySearchIndexWriter iw, File file) throws IOException {
-		
-		try {
-			FileReader fr = new FileReader(file);
-			String docid = file.getName(); 
-			System.out.println(" >> Indexing  "+ docid);
-			
-			// Create a document for each index document.
-			Document doc = new Document();
-			
-			Field fdDocid = new Field("DOCID", docid, Field.Store.YES, Field.Index.NO); // This field for document id, which will be later used for identification. But this document id will not indexed so it will not be searched.
-			Field fdContent = new Field(AppConstants.CONTENT_FIELD, getText(fr), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.YES);
-
-			doc.add(fdDocid); // Now adding this field to the document
-			doc.add(fdContent); // Now adding this field to the document
-			
-			// add the document.
-			iw.addDocument(doc);
-			
-			// Closed the buffer and inputstream.
-			fr.close();
-		} catch (Exception e) {
-			System.out.println("Exception : indexTextDocuments" + e.toString());
-		}
-	}
-	
-	private static void indexZipDocuments(EasySearchIndexWriter iw, File file) throws IOException {
-		
-		try {
-			ZipFile zipSrc = new ZipFile(file);
-			Enumeration<? extends ZipEntry> entries = zipSrc.entries();
-			int entryCount = 0;
-
-			while(entries.hasMoreElements()){
-				
-				ZipEntry entry = entries.nextElement();
-				
-				entryCount++;
-				String docid = entry.getName(); 
-				System.out.println(" >> Indexing "+ entryCount + "/" + zipSrc.size() + " "+ docid);
-				
-				// read the content of each entry
-				InputStream inStream = zipSrc.getInputStream(entry);
-				BufferedReader bfReader = new BufferedReader(new InputStreamReader(inStream, AppConstants.UTF_8)); 
-				
-				// Create a document for each index document.
-				Document doc = new Document();
-				
-				Field fdDocid = new Field("DOCID", docid, Field.Store.YES, Field.Index.NO); // This field for document id, which will be later used for identification. But this document id will not indexed so it will not be searched.
-				Field fdContent = new Field(AppConstants.CONTENT_FIELD, getText(bfReader), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.YES); // This field is specifically for the content, which will be not stored but indexed in order to search inside the document.
-				
-				doc.add(fdDocid); // Now adding this field to the document
-				doc.add(fdContent); // Now adding this field to the document
-				
-				// add the document.
-				iw.addDocument(doc);
-				
-				// Closed the buffer and inputstream.
-				bfReader.close();
-				inStream.close();
-			}
-			
-			zipSrc.close(); // close the zip file
-		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while building the index " + indexDirPath);
 		}
 	}
 	
@@ -212,17 +157,20 @@ public class EasySearchIndexBuilder  {
 				indexWriter.close();
 			}
 		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+			log.error("updateDocuments failed", e);
 		}
 	}
 	
 	public static void main(String[] args) {
 		
 		try {
-			EasySearchIndexBuilder biBuilder = new EasySearchIndexBuilder();
-			biBuilder.createIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
+			// optional arguments: the number of reader threads and analyzer threads.
+			int readerThreads = args.length > 0 ? Integer.parseInt(args[0]) : IndexingPipeline.DEFAULT_READER_THREADS;
+			int analyzerThreads = args.length > 1 ? Integer.parseInt(args[1]) : IndexingPipeline.DEFAULT_ANALYZER_THREADS;
+
+			createIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH, true, readerThreads, analyzerThreads);
 		} catch (Exception e) {
-			System.out.println("Exception : " + e.toString());
+			log.error("createIndexes failed", e);
 		}
 	}
 }
@@ -0,0 +1,183 @@
+package engine.easy.indexer;
+
+/**
+ * <p>
+ * This is a ImpactIndexBuilder class which precomputes the BM25 impact of every posting of the content field
+ * and writes the quantized impacts to a sidecar file (bm25.impacts) next to the lucene index.
+ * </p>
+ *
+ * <p>
+ * The impact of a posting is the BM25 document part of the score for the build time k_1 and b, a query is then
+ * scored by summing the impacts of its terms. The sidecar is bound to the index version it was built for, an
+ * index change makes it stale until it is built again. The sidecar is written to a temporary file which is renamed
+ * into place once complete, so a reader never sees a partly written sidecar.
+ * </p>
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexOutput;
+
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.ranking_model.BM25;
+import engine.easy.util.AppConstants;
+
+public class ImpactIndexBuilder {
+
+	private static final Logger log = Logger.getLogger(ImpactIndexBuilder.class);
+
+	/** The name of the sidecar file inside the index directory. */
+	public static final String IMPACT_FILE_NAME = "bm25.impacts";
+	private static final String IMPACT_TEMP_FILE_NAME = IMPACT_FILE_NAME + ".tmp";
+
+	/** The header of the sidecar file and its format version. */
+	public static final int IMPACT_FILE_MAGIC = 0x424d3235;
+	public static final int IMPACT_FILE_FORMAT = 1;
+
+	/** The impacts are quantized to signed 16 bit values. */
+	public static final int QUANTIZATION_LEVELS = Short.MAX_VALUE;
+
+	/**
+	 * Build the impact sidecar of the index with the default BM25 parameters.
+	 *
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public static void createImpactIndex(String indexDirPath) throws IOException {
+		createImpactIndex(indexDirPath, new BM25());
+	}
+
+	/**
+	 * Build the impact sidecar of the index with the given BM25 parameters.
+	 *
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public static void createImpactIndex(String indexDirPath, BM25 bm25) throws IOException {
+		Directory indexDir = FSDirectory.open(new File(indexDirPath));
+		IndexReader ixReader = IndexReader.open(indexDir, true);
+
+		try {
+			EasySearchIndexReader esiReader = new EasySearchIndexReader(ixReader);
+			int docNum = esiReader.recordCount(AppConstants.CONTENT_FIELD);
+			double avgDocLen = esiReader.avgFieldLength(AppConstants.CONTENT_FIELD);
+
+			// Step1 - find the largest impact, which sets the quantization scale.
+			double maxImpact = 0d;
+			int termCount = 0;
+			TermEnum terms = ixReader.terms(new Term(AppConstants.CONTENT_FIELD, ""));
+			try {
+				do {
+					Term term = terms.term();
+					if (term == null || !term.field().equals(AppConstants.CONTENT_FIELD))
+						break;
+
+					int docFreq = terms.docFreq();
+					TermDocs docs = ixReader.termDocs(term);
+					while (docs.next()) {
+						int docLen = esiReader.docLength(docs.doc(), AppConstants.CONTENT_FIELD);
+						double impact = bm25.score(docs.freq(), docNum, docLen, avgDocLen, 1d, docFreq);
+						maxImpact = Math.max(maxImpact, Math.abs(impact));
+					}
+					docs.close();
+					termCount++;
+				} while (terms.next());
+			} finally {
+				terms.close();
+			}
+			double scale = maxImpact > 0d ? maxImpact / QUANTIZATION_LEVELS : 1d;
+
+			// Step2 - write the quantized impacts of every term, the documents are delta encoded.
+			IndexOutput out = indexDir.createOutput(IMPACT_TEMP_FILE_NAME);
+			try {
+				out.writeInt(IMPACT_FILE_MAGIC);
+				out.writeInt(IMPACT_FILE_FORMAT);
+				out.writeLong(ixReader.getVersion());
+				out.writeLong(Double.doubleToLongBits(bm25.getK1()));
+				out.writeLong(Double.doubleToLongBits(bm25.getParameter()));
+				out.writeLong(Double.doubleToLongBits(scale));
+				out.writeVInt(termCount);
+
+				terms = ixReader.terms(new Term(AppConstants.CONTENT_FIELD, ""));
+				try {
+					int[] postingDocs = new int[16];
+					int[] postingImpacts = new int[16];
+
+					for (int t = 0; t < termCount; t++) {
+						Term term = terms.term();
+						int docFreq = terms.docFreq();
+
+						TermDocs docs = ixReader.termDocs(term);
+						int count = 0;
+						while (docs.next()) {
+							if (count == postingDocs.length) {
+								postingDocs = grow(postingDocs);
+								postingImpacts = grow(postingImpacts);
+							}
+							int docLen = esiReader.docLength(docs.doc(), AppConstants.CONTENT_FIELD);
+							double impact = bm25.score(docs.freq(), docNum, docLen, avgDocLen, 1d, docFreq);
+							postingDocs[count] = docs.doc();
+							postingImpacts[count] = (int) Math.round(impact / scale);
+							count++;
+						}
+						docs.close();
+
+						out.writeString(term.text());
+						out.writeVInt(count);
+						int lastDoc = 0;
+						for (int i = 0; i < count; i++) {
+							int quantized = postingImpacts[i];
+							out.writeVInt(postingDocs[i] - lastDoc);
+							out.writeVInt((quantized << 1) ^ (quantized >> 31)); // zig-zag, the impact of a frequent term is negative.
+							lastDoc = postingDocs[i];
+						}
+						terms.next();
+					}
+				} finally {
+					terms.close();
+				}
+			} finally {
+				out.close();
+			}
+
+			// Step3 - replace the previous sidecar with the complete one.
+			File dir = new File(indexDirPath);
+			File sidecar = new File(dir, IMPACT_FILE_NAME);
+			File tmp = new File(dir, IMPACT_TEMP_FILE_NAME);
+			if (!tmp.renameTo(sidecar)) {
+				// the rename does not replace an existing file on every platform.
+				if (sidecar.exists() && !sidecar.delete())
+					throw new IOException("Cannot replace the impact index: " + sidecar);
+				if (!tmp.renameTo(sidecar))
+					throw new IOException("Cannot write the impact index: " + sidecar);
+			}
+
+			log.info("Impact index of " + termCount + " terms, " + bm25.getInfo());
+		} finally {
+			ixReader.close();
+			indexDir.close();
+		}
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length << 1];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	public static void main(String[] args) {
+
+		try {
+			createImpactIndex(AppConstants.INDEX_DIR_PATH);
+		} catch (Exception e) {
+			log.error("createImpactIndex failed", e);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package engine.easy.indexer;
+
+/**
+ * <p>
+ * This is a IncrementalIndexBuilder class which brings an existing index up to date with the data bank by indexing
+ * only the documents which were added, changed or removed since the last build.
+ * </p>
+ *
+ * <p>
+ * The data bank is compared with the manifest of the last build (see IndexManifest). A new text file or zip entry is
+ * added, a changed one replaces the indexed document of the same path and a removed one is deleted by its path, the
+ * DOCID of two sources may be the same. The writer is opened on the existing index, so the unchanged documents are
+ * neither read nor analyzed again. An index without a manifest is built in full. A source which can not be read is
+ * left out of the manifest, so it is retried by the next update instead of failing the whole delta. The collection
+ * statistics of the reader are kept per reader, so the reopened reader of the searcher manager counts the changed
+ * index again.
+ * </p>
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import engine.easy.analyzer.EasySearchAnalyzer;
+import engine.easy.indexer.writer.EasySearchIndexWriter;
+import engine.easy.util.AppConstants;
+
+public class IncrementalIndexBuilder {
+
+	private static final Logger log = Logger.getLogger(IncrementalIndexBuilder.class);
+
+	/**
+	 * Update the index with the changes of the data bank since the last build, the index is built in full if it
+	 * does not exist or has no manifest.
+	 *
+	 * @return the number of added, updated and deleted documents, or -1 if the index was built in full.
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public static int updateIndexes(String dataBankDirPath, String indexDirPath) throws IOException {
+		File dataBank = new File(dataBankDirPath);
+		boolean hasImpactIndex = new File(indexDirPath, ImpactIndexBuilder.IMPACT_FILE_NAME).exists();
+
+		Directory indexDir = FSDirectory.open(new File(indexDirPath));
+		IndexManifest previous = IndexReader.indexExists(indexDir) ? IndexManifest.load(indexDirPath) : null;
+		if (previous == null) {
+			indexDir.close();
+			log.info("No index manifest, building the whole index");
+			EasySearchIndexBuilder.createIndexes(dataBankDirPath, indexDirPath, hasImpactIndex);
+			return -1;
+		}
+
+		// Step1 - compare the data bank with the manifest of the last build.
+		IndexManifest current = IndexManifest.scan(dataBank, previous);
+		Map<String, IndexManifest.Entry> previousEntries = previous.getEntries();
+		Map<String, IndexManifest.Entry> currentEntries = current.getEntries();
+
+		List<IndexManifest.Entry> added = new ArrayList<IndexManifest.Entry>();
+		List<IndexManifest.Entry> updated = new ArrayList<IndexManifest.Entry>();
+		List<IndexManifest.Entry> deleted = new ArrayList<IndexManifest.Entry>();
+
+		for (IndexManifest.Entry entry : currentEntries.values()) {
+			IndexManifest.Entry old = previousEntries.get(entry.path);
+			if (old == null)
+				added.add(entry);
+			else if (!entry.sameContent(old))
+				updated.add(entry);
+		}
+		for (IndexManifest.Entry old : previousEntries.values()) {
+			if (!currentEntries.containsKey(old.path))
+				deleted.add(old);
+		}
+
+		int changes = added.size() + updated.size() + deleted.size();
+		if (changes == 0) {
+			indexDir.close();
+			current.store(indexDirPath); // only the modification times may have changed.
+			log.info("The index is up to date");
+			return 0;
+		}
+
+		// Step2 - open the writer on the existing index and apply the delta, the deletes go first so a document
+		// moved to another file or zip is deleted before it is added again under the same DOCID.
+		if (IndexWriter.isLocked(indexDir)) {
+			IndexWriter.unlock(indexDir);
+		}
+		IndexWriter indexWriter = new IndexWriter(indexDir, new EasySearchAnalyzer(), Boolean.FALSE, MaxFieldLength.UNLIMITED);
+		indexWriter.setRAMBufferSizeMB(EasySearchIndexBuilder.INDEXING_RAM_BUFFER_MB);
+		EasySearchIndexWriter esiWriter = new EasySearchIndexWriter(indexWriter);
+
+		List<String> failed = new ArrayList<String>();
+		boolean committed = false;
+		try {
+			for (IndexManifest.Entry entry : deleted)
+				esiWriter.deleteDocuments(new Term(IndexingPipeline.PATH_FIELD, entry.path));
+
+			// an added source may have been partly indexed by a failed build, so it replaces any document of its path.
+			List<IndexManifest.Entry> changed = new ArrayList<IndexManifest.Entry>(updated);
+			changed.addAll(added);
+			for (IndexManifest.Entry entry : changed) {
+				String text;
+				try {
+					text = readText(dataBank, entry);
+				} catch (IOException e) {
+					// an unreadable source does not hold back the others, it is left out of the manifest and retried.
+					log.error("updateIndexes skipped " + entry.path, e);
+					failed.add(entry.path);
+					continue;
+				}
+				esiWriter.updateDocument(new Term(IndexingPipeline.PATH_FIELD, entry.path), IndexingPipeline.createDocument(entry.path, entry.docid, text));
+			}
+
+			indexWriter.commit();
+			committed = true;
+		} finally {
+			if (!committed) {
+				// any failure, not only an IO one, leaves the index and the manifest of the last build as they were
+				// and releases the write lock for the next update.
+				try {
+					indexWriter.rollback();
+				} finally {
+					indexDir.close();
+				}
+			}
+		}
+
+		esiWriter.close();
+		indexWriter.close();
+		indexDir.close();
+
+		// Step3 - record the new state, and rebuild the impact sidecar which is stale for the new index version.
+		current.dropSources(failed);
+		current.store(indexDirPath);
+		if (hasImpactIndex) {
+			ImpactIndexBuilder.createImpactIndex(indexDirPath);
+		}
+
+		log.info("Added " + added.size() + ", updated " + updated.size() + " and deleted " + deleted.size() + " documents, "
+				+ failed.size() + " failed");
+		return changes - failed.size();
+	}
+
+	/**
+	 * Read the text of a text file or a zip entry of the data bank.
+	 *
+     * @throws IOException if the file would have any IO operation.
+	 */
+	private static String readText(File dataBank, IndexManifest.Entry entry) throws IOException {
+		if (!entry.isZipEntry()) {
+			InputStream in = new FileInputStream(new File(dataBank, entry.file));
+			try {
+				return IndexingPipeline.getText(new InputStreamReader(in, AppConstants.UTF_8));
+			} finally {
+				in.close();
+			}
+		}
+
+		ZipFile zipSrc = new ZipFile(new File(dataBank, entry.file));
+		try {
+			InputStream in = zipSrc.getInputStream(zipSrc.getEntry(entry.docid));
+			try {
+				return IndexingPipeline.getText(new InputStreamReader(in, AppConstants.UTF_8));
+			} finally {
+				in.close();
+			}
+		} finally {
+			zipSrc.close();
+		}
+	}
+
+	public static void main(String[] args) {
+
+		try {
+			updateIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
+		} catch (Exception e) {
+			log.error("updateIndexes failed", e);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package engine.easy.indexer;
+
+/**
+ * <p>
+ * This is a IndexManifest class which records the source of every indexed document: the path of the text file or
+ * of the zip entry, its size, its modification time and a CRC32 hash of its content.
+ * </p>
+ *
+ * <p>
+ * The path is unique in the data bank while the DOCID is not, two zips may hold entries of the same name, so the
+ * path is also indexed (see IndexingPipeline.PATH_FIELD) and the incremental indexer updates and deletes the
+ * documents by their path. Each line of the manifest tells whether its source is a text file or a zip entry.
+ * </p>
+ *
+ * <p>
+ * The manifest is kept in the index directory (index.manifest) and compared against a fresh scan of the data bank,
+ * so the incremental indexer only adds, updates or deletes the documents which have changed since the last build.
+ * The content of a text file is only hashed again when its size or modification time has changed, the hash of a
+ * zip entry is the CRC32 the zip file already keeps.
+ * </p>
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+import engine.easy.util.AppConstants;
+import engine.easy.util.FileType;
+import engine.easy.util.Util;
+
+public class IndexManifest {
+
+	private static final Logger log = Logger.getLogger(IndexManifest.class);
+
+	/** The name of the manifest file inside the index directory. */
+	public static final String MANIFEST_FILE_NAME = "index.manifest";
+
+	/** The separator between a zip file name and the entry name in a manifest path. */
+	public static final String ZIP_ENTRY_SEPARATOR = "!";
+
+	/** The kinds of source of a manifest line. */
+	private static final String FILE_KIND = "file";
+	private static final String ZIP_KIND = "zip";
+
+	private final Map<String, Entry> entries;
+
+	public IndexManifest() {
+		this.entries = new LinkedHashMap<String, Entry>();
+	}
+
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Scan the text and zip files of the data bank, the hashes of the unchanged files are taken from the previous manifest.
+	 *
+	 * @param dataBank the data bank directory.
+	 * @param previous the manifest of the last build, may be null.
+	 * @return the manifest of the current data bank.
+	 * @throws IOException if a file could not be read.
+	 */
+	public static IndexManifest scan(File dataBank, IndexManifest previous) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+		if (!dataBank.isDirectory())
+			return manifest;
+
+		for (File file : dataBank.listFiles()) {
+			if (Util.getFileExtension(file).equalsIgnoreCase(FileType.ZIP)) {
+				ZipFile zipSrc;
+				try {
+					zipSrc = new ZipFile(file);
+				} catch (IOException e) {
+					// an unreadable zip is skipped, as the pipeline skips it, and is indexed once it can be read.
+					log.error("scan skipped the unreadable zip " + file, e);
+					continue;
+				}
+				try {
+					Enumeration<? extends ZipEntry> zipEntries = zipSrc.entries();
+					while (zipEntries.hasMoreElements()) {
+						ZipEntry entry = zipEntries.nextElement();
+						if (!entry.isDirectory()) {
+							String path = zipEntryPath(file.getName(), entry.getName());
+							manifest.entries.put(path, new Entry(path, true, file.getName(), entry.getName(), entry.getSize(), entry.getTime(), entry.getCrc()));
+						}
+					}
+				} finally {
+					zipSrc.close();
+				}
+			}
+			else if (file.isFile()) {
+				String path = file.getName();
+				Entry old = previous != null ? previous.entries.get(path) : null;
+				long hash = (old != null && old.size == file.length() && old.lastModified == file.lastModified()) ? old.hash : hash(file);
+				manifest.entries.put(path, new Entry(path, false, file.getName(), file.getName(), file.length(), file.lastModified(), hash));
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Remove the entries of the sources which were not indexed, so the next update indexes them again.
+	 *
+	 * @param sources the manifest paths of the documents and the names of the data bank files
+	 * @return the number of removed entries.
+	 */
+	public int dropSources(Collection<String> sources) {
+		int dropped = 0;
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (sources.contains(entry.path) || sources.contains(entry.file)) {
+				it.remove();
+				dropped++;
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Get the manifest path of a zip entry.
+	 *
+	 * @param zipName the name of the zip file in the data bank
+	 * @param entryName the name of the entry
+	 * @return the path of the entry, unique in the data bank.
+	 */
+	public static String zipEntryPath(String zipName, String entryName) {
+		return zipName + ZIP_ENTRY_SEPARATOR + entryName;
+	}
+
+	private static long hash(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		InputStream in = new FileInputStream(file);
+		try {
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer))
+				crc.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Load the manifest of the index directory.
+	 *
+	 * @param indexDirPath the index directory path.
+	 * @return the manifest, or null if the index has no manifest or a manifest of an older format.
+	 * @throws IOException if the manifest could not be read.
+	 */
+	public static IndexManifest load(String indexDirPath) throws IOException {
+		File file = new File(indexDirPath, MANIFEST_FILE_NAME);
+		if (!file.exists())
+			return null;
+
+		IndexManifest manifest = new IndexManifest();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), AppConstants.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split("\t");
+				if (values.length != 7) {
+					// the index of an older manifest has no path field, it is built again in full.
+					log.info("The index manifest has an older format: " + file);
+					return null;
+				}
+				Entry entry = new Entry(values[0], ZIP_KIND.equals(values[1]), values[2], values[3], Long.parseLong(values[4]),
+						Long.parseLong(values[5]), Long.parseLong(values[6]));
+				manifest.entries.put(entry.path, entry);
+			}
+		} finally {
+			reader.close();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Store the manifest in the index directory, the previous manifest is replaced once the new one is written.
+	 *
+	 * @param indexDirPath the index directory path.
+	 * @throws IOException if the manifest could not be written.
+	 */
+	public void store(String indexDirPath) throws IOException {
+		File file = new File(indexDirPath, MANIFEST_FILE_NAME);
+		File tmp = new File(indexDirPath, MANIFEST_FILE_NAME + ".tmp");
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), AppConstants.UTF_8));
+		try {
+			for (Entry entry : entries.values()) {
+				writer.write(entry.path + "\t" + (entry.zipEntry ? ZIP_KIND : FILE_KIND) + "\t" + entry.file + "\t" + entry.docid + "\t"
+						+ entry.size + "\t" + entry.lastModified + "\t" + entry.hash + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("Cannot replace the manifest: " + file);
+		if (!tmp.renameTo(file))
+			throw new IOException("Cannot write the manifest: " + file);
+	}
+
+	/**
+	 * The source of one indexed document.
+	 */
+	public static class Entry {
+
+		public final String path;		// the file name, or the zip file name and the entry name
+		public final boolean zipEntry;
+		public final String file;		// the name of the text or zip file in the data bank
+		public final String docid;		// the DOCID field of the indexed document, the file or the entry name
+		public final long size;
+		public final long lastModified;
+		public final long hash;
+
+		public Entry(String path, boolean zipEntry, String file, String docid, long size, long lastModified, long hash) {
+			this.path = path;
+			this.zipEntry = zipEntry;
+			this.file = file;
+			this.docid = docid;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+
+		public boolean isZipEntry() {
+			return zipEntry;
+		}
+
+		public boolean sameContent(Entry other) {
+			return other != null && size == other.size && hash == other.hash;
+		}
+	}
+}
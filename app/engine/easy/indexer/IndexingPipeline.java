@@ -0,0 +1,313 @@
+package engine.easy.indexer;
+
+/**
+ * <p>
+ * This is a IndexingPipeline class which indexes a data bank with a pipeline of threads.
+ * </p>
+ *
+ * <p>
+ * The reader stage walks the text and zip files of the data bank and puts the raw text of every document into a
+ * bounded queue. A pool of analyzer workers takes the documents from the queue, analyzes them and adds them to the
+ * shared index writer, which accepts concurrent documents. The bounded queue keeps the readers from running ahead of
+ * the analyzers, and the number of reader and analyzer threads is configurable. If a stage thread dies, the other
+ * stages stop instead of waiting on the queue forever, and the run fails.
+ * </p>
+ *
+ * <p>
+ * The text files are decoded as UTF-8, as the zip entries always were, rather than with the platform charset, so the
+ * index is the same on every machine. With several analyzer threads the documents reach the writer in no fixed
+ * order, so their lucene ids, and with them the order of the results of equal score, may change from a build to the
+ * next. A build with one reader and one analyzer thread adds the documents in the order of the data bank files.
+ * </p>
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+
+import engine.easy.indexer.writer.EasySearchIndexWriter;
+import engine.easy.util.AppConstants;
+import engine.easy.util.FileType;
+import engine.easy.util.Util;
+
+public class IndexingPipeline {
+
+	private static final Logger log = Logger.getLogger(IndexingPipeline.class);
+
+	/** The default number of threads reading the data bank files. */
+	public static final int DEFAULT_READER_THREADS = 1;
+
+	/** The default number of threads analyzing the documents, one for each core. */
+	public static final int DEFAULT_ANALYZER_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/** The default number of read documents waiting for an analyzer. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	/** The field of the manifest path of a document, unique in the data bank unlike the DOCID (see IndexManifest). */
+	public static final String PATH_FIELD = "PATH";
+
+	/** The time a stage waits on the queue before it checks that the other stage is still running. */
+	private static final long QUEUE_WAIT_MILLIS = 100L;
+
+	/** The marker which tells an analyzer worker that all the documents are read. */
+	private static final SourceDocument END_OF_DOCUMENTS = new SourceDocument(null, null, null);
+
+	private final EasySearchIndexWriter esiWriter;
+	private final int readerThreads;
+	private final int analyzerThreads;
+	private final BlockingQueue<SourceDocument> queue;
+
+	private final AtomicInteger readCount = new AtomicInteger();
+	private final AtomicInteger indexedCount = new AtomicInteger();
+	private final Set<String> failedSources = Collections.synchronizedSet(new HashSet<String>());
+	private volatile Throwable stageFailure;
+
+	public IndexingPipeline(EasySearchIndexWriter esiWriter) {
+		this(esiWriter, DEFAULT_READER_THREADS, DEFAULT_ANALYZER_THREADS, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public IndexingPipeline(EasySearchIndexWriter esiWriter, int readerThreads, int analyzerThreads, int queueCapacity) {
+		this.esiWriter = esiWriter;
+		this.readerThreads = Math.max(1, readerThreads);
+		this.analyzerThreads = Math.max(1, analyzerThreads);
+		this.queue = new ArrayBlockingQueue<SourceDocument>(Math.max(1, queueCapacity));
+	}
+
+	/**
+	 * Index all the text and zip files of the data bank, and wait until every document is added to the writer.
+	 *
+	 * @param dataBank the data bank directory.
+	 * @return the number of indexed documents.
+	 * @throws IOException if a reader or an analyzer thread died.
+	 * @throws InterruptedException if the calling thread is interrupted.
+	 */
+	public int run(File dataBank) throws IOException, InterruptedException {
+		final File[] files = dataBank.isDirectory() ? dataBank.listFiles() : new File[0];
+		final AtomicInteger nextFile = new AtomicInteger();
+		long start = System.currentTimeMillis();
+
+		// Step1 - the reader stage, the files are shared out between the reader threads.
+		Thread[] readers = new Thread[readerThreads];
+		for (int i = 0; i < readerThreads; i++) {
+			readers[i] = new Thread("IndexingPipeline-reader-" + i) {
+				public void run() {
+					try {
+						int pos;
+						while (stageFailure == null && (pos = nextFile.getAndIncrement()) < files.length) {
+							File file = files[pos];
+							if (Util.getFileExtension(file).equalsIgnoreCase(FileType.ZIP)) {
+								readZipDocuments(file);
+							}
+							else if (file.isFile()) {
+								readTextDocument(file);
+							}
+						}
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+			};
+			readers[i].start();
+		}
+
+		// Step2 - the analyzer workers, which add the documents to the shared writer.
+		Thread[] analyzers = new Thread[analyzerThreads];
+		for (int i = 0; i < analyzerThreads; i++) {
+			analyzers[i] = new Thread("IndexingPipeline-analyzer-" + i) {
+				public void run() {
+					try {
+						SourceDocument source;
+						while ((source = queue.take()) != END_OF_DOCUMENTS) {
+							indexDocument(source);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+			};
+			analyzers[i].start();
+		}
+
+		// Step3 - once every file is read, stop each analyzer after the queued documents.
+		for (Thread reader : readers)
+			reader.join();
+		for (int i = 0; i < analyzerThreads; ) {
+			if (queue.offer(END_OF_DOCUMENTS, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+				i++;
+			else if (!isAnyAlive(analyzers))
+				break; // the analyzers died, nothing takes from the queue any more.
+		}
+		for (Thread analyzer : analyzers)
+			analyzer.join();
+
+		if (stageFailure != null)
+			throw new IOException("The indexing pipeline failed: " + stageFailure, stageFailure);
+
+		long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+		log.info("Indexed " + indexedCount.get() + "/" + readCount.get() + " documents in " + elapsed + " ms, "
+				+ (indexedCount.get() * 1000L / elapsed) + " docs/sec (" + readerThreads + " reader, " + analyzerThreads + " analyzer threads)");
+
+		return indexedCount.get();
+	}
+
+	private void readTextDocument(File file) {
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(file), AppConstants.UTF_8);
+			try {
+				enqueue(new SourceDocument(file.getName(), file.getName(), getText(reader)));
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			failedSources.add(file.getName());
+			log.error("readTextDocument failed for " + file, e);
+		}
+	}
+
+	private void readZipDocuments(File file) {
+		try {
+			ZipFile zipSrc = new ZipFile(file);
+			try {
+				Enumeration<? extends ZipEntry> entries = zipSrc.entries();
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					if (entry.isDirectory())
+						continue;
+
+					// read the content of each entry
+					InputStream inStream = zipSrc.getInputStream(entry);
+					try {
+						enqueue(new SourceDocument(IndexManifest.zipEntryPath(file.getName(), entry.getName()), entry.getName(),
+								getText(new InputStreamReader(inStream, AppConstants.UTF_8))));
+					} finally {
+						inStream.close();
+					}
+				}
+			} finally {
+				zipSrc.close(); // close the zip file
+			}
+		} catch (Exception e) {
+			failedSources.add(file.getName());
+			log.error("readZipDocuments failed for " + file, e);
+		}
+	}
+
+	private void enqueue(SourceDocument source) throws IOException, InterruptedException {
+		readCount.incrementAndGet();
+		while (!queue.offer(source, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (stageFailure != null)
+				throw new IOException("The analyzer threads stopped");
+		}
+	}
+
+	/**
+	 * Record the death of a stage thread, the other stages stop once they see it.
+	 */
+	private void fail(Throwable t) {
+		if (stageFailure == null)
+			stageFailure = t;
+		log.error(Thread.currentThread().getName() + " failed", t);
+	}
+
+	private static boolean isAnyAlive(Thread[] threads) {
+		for (Thread thread : threads) {
+			if (thread.isAlive())
+				return true;
+		}
+		return false;
+	}
+
+	private void indexDocument(SourceDocument source) {
+		try {
+			esiWriter.addDocument(createDocument(source.path, source.docid, source.text));
+			indexedCount.incrementAndGet();
+		} catch (Exception e) {
+			failedSources.add(source.path);
+			log.error("indexDocument failed for " + source.path, e);
+		}
+	}
+
+	/**
+	 * Get the sources which could not be read or indexed, they are left out of the manifest so the next update
+	 * indexes them again.
+	 *
+	 * @return the manifest paths of the failed documents and the names of the data bank files which failed to be read.
+	 */
+	public Set<String> getFailedSources() {
+		synchronized (failedSources) {
+			return new HashSet<String>(failedSources);
+		}
+	}
+
+	/**
+	 * Create the index document with the path, the document id and the content fields.
+	 *
+	 * @param path the manifest path of the document, see IndexManifest.
+	 * @param docid the document id, the file or zip entry name.
+	 * @param text the document text.
+	 * @return the index document.
+	 */
+	public static Document createDocument(String path, String docid, String text) {
+		Document doc = new Document();
+
+		Field fdPath = new Field(PATH_FIELD, path, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS); // This field is indexed as a single term, so the incremental indexer can update or delete exactly this document.
+
+		Field fdDocid = new Field("DOCID", docid, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS); // This field for document id, which will be later used for identification.
+		Field fdContent = new Field(AppConstants.CONTENT_FIELD, text, Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS_OFFSETS); // This field is specifically for the content, which is stored and indexed in order to search inside the document. The term vector keeps the offsets of the terms for the snippets.
+
+		doc.add(fdPath); // Now adding this field to the document
+		doc.add(fdDocid); // Now adding this field to the document
+		doc.add(fdContent); // Now adding this field to the document
+		return doc;
+	}
+
+	/**
+	 * Read the text of a document, the lines are joined as the sequential builder always did.
+	 */
+	static String getText(Reader reader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		BufferedReader br = new BufferedReader(reader);
+		String s;
+		while ((s = br.readLine()) != null) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The raw text of a document read from the data bank.
+	 */
+	private static class SourceDocument {
+
+		final String path;
+		final String docid;
+		final String text;
+
+		SourceDocument(String path, String docid, String text) {
+			this.path = path;
+			this.docid = docid;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a CollectionStatistics class which keeps the BM25 collection statistics of one index generation: the
+ * field length, the record count and the unique term count of every field.
+ * </p>
+ *
+ * <p>
+ * The statistics of a reader are computed once, in the background when the reader is opened (see
+ * {@link #prepare(IndexReader)}), and then published as immutable values shared by all the requests using the
+ * reader. A reader of a changed index is a new generation with its own statistics, so the statistics never go
+ * stale. The statistics of the content field are computed with the generation, the statistics of any other field
+ * on its first request.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermEnum;
+
+import engine.easy.util.AppConstants;
+
+public class CollectionStatistics {
+
+	/** The statistics of the opened readers. */
+	private static final ReaderCache<CollectionStatistics> statistics = new ReaderCache<CollectionStatistics>("CollectionStatistics", "collection statistics") {
+		protected CollectionStatistics build(IndexReader ixReader) throws IOException {
+			return compute(ixReader);
+		}
+	};
+
+	private final long generation;
+	private final Map<String, Integer> uniqueTermCounts;
+	private final Map<String, FieldStatistics> fields = new ConcurrentHashMap<String, FieldStatistics>();
+
+	private CollectionStatistics(long generation, Map<String, Integer> uniqueTermCounts) {
+		this.generation = generation;
+		this.uniqueTermCounts = uniqueTermCounts;
+	}
+
+	/**
+	 * Start computing the statistics of the reader in the background, if they are not computed yet.
+	 *
+	 * @param ixReader the opened index reader.
+	 */
+	public static void prepare(IndexReader ixReader) {
+		statistics.future(ixReader);
+	}
+
+	/**
+	 * Get the statistics of the reader, waiting for the background computation if it is still running.
+	 *
+	 * @param ixReader the index reader.
+	 * @return the statistics of the reader generation.
+	 * @throws IOException if the index could not be read.
+	 */
+	public static CollectionStatistics getStatistics(IndexReader ixReader) throws IOException {
+		return statistics.get(ixReader);
+	}
+
+	/**
+	 * Get the statistics of a field of the reader.
+	 *
+	 * @param ixReader the index reader.
+	 * @param fdname the field name.
+	 * @return the statistics of the field.
+	 * @throws IOException if the index could not be read.
+	 */
+	public static FieldStatistics getFieldStatistics(IndexReader ixReader, String fdname) throws IOException {
+		CollectionStatistics stats = getStatistics(ixReader);
+		FieldStatistics field = stats.fields.get(fdname);
+		if (field == null) {
+			field = stats.computeField(ixReader, fdname);
+			stats.fields.put(fdname, field);
+		}
+		return field;
+	}
+
+	private static CollectionStatistics compute(IndexReader ixReader) throws IOException {
+		// the unique terms of all the fields are counted in one pass over the term dictionary.
+		Map<String, Integer> uniqueTermCounts = new HashMap<String, Integer>();
+		TermEnum tmEnum = ixReader.terms();
+		try {
+			String lastField = null;
+			int tmNum = 0;
+			while (tmEnum.next()) {
+				String field = tmEnum.term().field();
+				if (!field.equals(lastField)) {
+					if (lastField != null)
+						uniqueTermCounts.put(lastField, Integer.valueOf(tmNum));
+					lastField = field;
+					tmNum = 0;
+				}
+				tmNum++;
+			}
+			if (lastField != null)
+				uniqueTermCounts.put(lastField, Integer.valueOf(tmNum));
+		} finally {
+			tmEnum.close();
+		}
+
+		CollectionStatistics stats = new CollectionStatistics(ixReader.getVersion(), Collections.unmodifiableMap(uniqueTermCounts));
+		stats.fields.put(AppConstants.CONTENT_FIELD, stats.computeField(ixReader, AppConstants.CONTENT_FIELD));
+		return stats;
+	}
+
+	private FieldStatistics computeField(IndexReader ixReader, String fdname) throws IOException {
+		DocLengthColumn column = DocLengthColumn.getColumn(ixReader, fdname);
+		Integer tmNum = uniqueTermCounts.get(fdname);
+		return new FieldStatistics(column.fieldLength(), column.recordCount(), tmNum == null ? 0 : tmNum.intValue());
+	}
+
+	/**
+	 * @return the version of the index commit these statistics belong to.
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * The immutable statistics of a field.
+	 */
+	public static class FieldStatistics {
+
+		private final long fieldLength;
+		private final int recordCount;
+		private final int uniqueTermCount;
+
+		FieldStatistics(long fieldLength, int recordCount, int uniqueTermCount) {
+			this.fieldLength = fieldLength;
+			this.recordCount = recordCount;
+			this.uniqueTermCount = uniqueTermCount;
+		}
+
+		/**
+		 * @return the sum of the field length over all the documents.
+		 */
+		public long fieldLength() {
+			return fieldLength;
+		}
+
+		/**
+		 * @return the number of documents which have the field.
+		 */
+		public int recordCount() {
+			return recordCount;
+		}
+
+		/**
+		 * @return the number of unique terms of the field.
+		 */
+		public int uniqueTermCount() {
+			return uniqueTermCount;
+		}
+
+		/**
+		 * @return the average field length, or 0 if no document has the field.
+		 */
+		public double avgFieldLength() {
+			if (recordCount == 0)
+				return 0.0D;
+			else
+				return ((double) fieldLength * 1.0D) / (double) recordCount;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a DocLengthColumn class which keeps the document length and the unique term count of a field
+ * for every document of an index reader in primitive int arrays indexed by the lucene document id.
+ * </p>
+ *
+ * <p>
+ * The column is built once per reader with a sequential pass over the extra data field (_etdat) written by
+ * EasySearchIndexWriter, and shared by all the requests using the same reader. After that the values are
+ * served with a plain array lookup, without loading any stored document.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+
+import engine.easy.indexer.FieldSelectorByName;
+import engine.easy.indexer.writer.EasySearchIndexWriter;
+
+public class DocLengthColumn {
+
+	/** The columns of each reader, the reader is weakly referenced so the columns die with the reader. */
+	private static final Map<IndexReader, Map<String, DocLengthColumn>> columns = new WeakHashMap<IndexReader, Map<String, DocLengthColumn>>();
+
+	private final int[] lengths;
+	private final int[] uniqueTermCounts;
+	private final long fieldLength;
+	private final int recordCount;
+
+	private DocLengthColumn(int[] lengths, int[] uniqueTermCounts, long fieldLength, int recordCount) {
+		this.lengths = lengths;
+		this.uniqueTermCounts = uniqueTermCounts;
+		this.fieldLength = fieldLength;
+		this.recordCount = recordCount;
+	}
+
+	/**
+	 * Get the column of given field for the reader, the column is built on the first call.
+	 *
+	 * @param ixReader the index reader
+	 * @param fdname the field name
+	 * @return the column of the field.
+	 * @throws IOException if the extra data could not be read.
+	 */
+	public static DocLengthColumn getColumn(IndexReader ixReader, String fdname) throws IOException {
+		Map<String, DocLengthColumn> readerColumns;
+
+		synchronized (columns) {
+			readerColumns = columns.get(ixReader);
+			if (readerColumns == null) {
+				readerColumns = new HashMap<String, DocLengthColumn>();
+				columns.put(ixReader, readerColumns);
+			}
+		}
+
+		// build the column once per reader, concurrent requests on the same reader wait for the first one.
+		synchronized (readerColumns) {
+			DocLengthColumn column = readerColumns.get(fdname);
+			if (column == null) {
+				column = build(ixReader, fdname);
+				readerColumns.put(fdname, column);
+			}
+			return column;
+		}
+	}
+
+	private static DocLengthColumn build(IndexReader ixReader, String fdname) throws IOException {
+		String extraDataFieldName = EasySearchIndexWriter.extraDataFieldName(fdname);
+		FieldSelectorByName selector = new FieldSelectorByName(new String[] { extraDataFieldName });
+
+		int maxDocid = ixReader.maxDoc();
+		int[] lengths = new int[maxDocid];
+		int[] uniqueTermCounts = new int[maxDocid];
+		long fdLength = 0L;
+		int recCount = 0;
+
+		for (int docid = 0; docid < maxDocid; docid++) {
+			if (ixReader.isDeleted(docid))
+				continue;
+
+			Document doc = ixReader.document(docid, selector);
+			if (doc == null)
+				continue;
+			Field fd = doc.getField(extraDataFieldName);
+			if (fd == null)
+				continue;
+			byte v[] = fd.getBinaryValue();
+			if (v == null || v.length < 8)
+				continue;
+
+			lengths[docid] = readInt(v, 0);
+			uniqueTermCounts[docid] = readInt(v, 4);
+			fdLength += lengths[docid];
+			recCount++;
+		}
+
+		return new DocLengthColumn(lengths, uniqueTermCounts, fdLength, recCount);
+	}
+
+	/**
+	 * Read the big endian int written by ArrayUtil.toBytes at given offset.
+	 */
+	private static int readInt(byte[] v, int offset) {
+		return ((v[offset] & 0xff) << 24) | ((v[offset + 1] & 0xff) << 16) | ((v[offset + 2] & 0xff) << 8) | (v[offset + 3] & 0xff);
+	}
+
+	public int docLength(int docid) {
+		return lengths[docid];
+	}
+
+	public int docUniqueTermCount(int docid) {
+		return uniqueTermCounts[docid];
+	}
+
+	/**
+	 * @return the sum of the field length over all the documents.
+	 */
+	public long fieldLength() {
+		return fieldLength;
+	}
+
+	/**
+	 * @return the number of documents which have the field.
+	 */
+	public int recordCount() {
+		return recordCount;
+	}
+}
@@ -19,11 +19,8 @@ package engine.easy.indexer.reader;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.HashMap;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
@@ -31,33 +28,19 @@ import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.store.Directory;
 
 import engine.easy.indexer.writer.EasySearchIndexWriter;
-import engine.easy.util.ArrayUtil;
 
 public class EasySearchIndexReader implements Closeable {
 
 	private IndexReader ixReader;
-    private static HashMap fieldLengths = new HashMap();
-    private static HashMap uniqueTermCounts = new HashMap();
-    private static HashMap fieldRecordCounts = new HashMap();
+    private String lastColumnField;
+    private DocLengthColumn lastColumn;
     
 	public EasySearchIndexReader(IndexReader ixReader) {
 		 this.ixReader = ixReader;
 	}
 
 	public int uniqTermCount(String fdname) throws IOException {
-		if (uniqueTermCounts.containsKey(fdname))
-			return ((Integer) uniqueTermCounts.get(fdname)).intValue();
-
-		TermEnum tmEnum = ixReader.terms();
-		int tmNum = 0;
-		while (tmEnum.next()) {
-			String field = tmEnum.term().field();
-			if (field.equals(fdname))
-				tmNum++;
-		}
-		tmEnum.close();
-		uniqueTermCounts.put(fdname, Integer.valueOf(tmNum));
-		return tmNum;
+		return CollectionStatistics.getFieldStatistics(ixReader, fdname).uniqueTermCount();
 	}
 
 	/**
@@ -72,66 +55,23 @@ public class EasySearchIndexReader implements Closeable {
     }
     
 	public long fieldLength(String fdname) throws IOException {
-		if (fieldLengths.containsKey(fdname))
-			return ((Long) fieldLengths.get(fdname)).longValue();
-		int recCount = 0;
-		long fdLength = 0L;
-		int maxDocid = ixReader.maxDoc();
-		for (int docid = 0; docid < maxDocid; docid++) {
-			int info[] = loadExtraData(docid, fdname);
-			if (info != null && info.length != 0) {
-				fdLength += info[0];
-				recCount++;
-			}
-		}
-
-		fieldRecordCounts.put(fdname, Integer.valueOf(recCount));
-		fieldLengths.put(fdname, Long.valueOf(fdLength));
-		return fdLength;
+		return CollectionStatistics.getFieldStatistics(ixReader, fdname).fieldLength();
 	}
 
 	public double avgFieldLength(String fdname) throws IOException {
-		long tmLen = fieldLength(fdname);
-		int recNum = recordCount(fdname);
-		if (recNum == 0)
-			return 0.0D;
-		else
-			return ((double) tmLen * 1.0D) / (double) recNum;
+		return CollectionStatistics.getFieldStatistics(ixReader, fdname).avgFieldLength();
 	}
 
 	public int recordCount(String fdname) throws IOException {
-		if (fieldRecordCounts.containsKey(fdname))
-			return ((Integer) fieldRecordCounts.get(fdname)).intValue();
-		int recCount = 0;
-		long fdLength = 0L;
-		int maxDocid = ixReader.maxDoc();
-		for (int docid = 0; docid < maxDocid; docid++) {
-			int info[] = loadExtraData(docid, fdname);
-			if (info != null && info.length != 0) {
-				fdLength += info[0];
-				recCount++;
-			}
-		}
-
-		fieldRecordCounts.put(fdname, Integer.valueOf(recCount));
-		fieldLengths.put(fdname, Long.valueOf(fdLength));
-		return recCount;
+		return CollectionStatistics.getFieldStatistics(ixReader, fdname).recordCount();
 	}
 
 	public int docLength(int docid, String fdname) throws IOException {
-		int info[] = loadExtraData(docid, fdname);
-		if (info == null || info.length == 0)
-			return 0;
-		else
-			return info[0];
+		return column(fdname).docLength(docid);
 	}
 
 	public int docUniqueTermCount(int docid, String fdname) throws IOException {
-		int info[] = loadExtraData(docid, fdname);
-		if (info == null || info.length == 0)
-			return 0;
-		else
-			return info[1];
+		return column(fdname).docUniqueTermCount(docid);
 	}
 
 	public long frequency(Term term) throws IOException {
@@ -143,21 +83,21 @@ public class EasySearchIndexReader implements Closeable {
 		return freq;
 	}
 
-	private synchronized int[] loadExtraData(int docid, String fdname)
-			throws IOException {
-		String extraDataFieldName = EasySearchIndexWriter.extraDataFieldName(fdname);
-		Document doc = ixReader.document(docid, new engine.easy.indexer.FieldSelectorByName(
-				new String[] { extraDataFieldName }));
-		if (doc == null)
-			return null;
-		Field fd = doc.getField(extraDataFieldName);
-		if (fd == null)
-			return null;
-		byte v[] = fd.getBinaryValue();
-		if (v == null)
-			return null;
-		else
-			return ArrayUtil.toInts(v);
+	/**
+	 * Get the doc length column of given field, the column is built once per reader and then kept by this reader.
+	 * 
+	 * @return the doc length column of the field.
+	 * @throws IOException if the extra data could not be read.
+	 */
+	private DocLengthColumn column(String fdname) throws IOException {
+		DocLengthColumn column = lastColumn;
+		if (column != null && fdname.equals(lastColumnField))
+			return column;
+
+		column = DocLengthColumn.getColumn(ixReader, fdname);
+		lastColumnField = fdname;
+		lastColumn = column;
+		return column;
 	}
 
     public void close() throws IOException
@@ -0,0 +1,178 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a ImpactIndexReader class which loads the quantized BM25 impacts written by ImpactIndexBuilder.
+ * </p>
+ *
+ * <p>
+ * The impacts of every term are kept in memory as primitive arrays. The sidecar is only loaded for the index
+ * version it was built for, so a stale sidecar is never used to score a newer index. A sidecar which is missing or
+ * stale is looked up again by the next query, as it is built after the index commit and may be written after the
+ * reader of the commit is opened. The impacts of a reader are loaded by one thread, the queries which come
+ * meanwhile are scored without them instead of waiting, and no lock is shared between the readers.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+
+import engine.easy.indexer.ImpactIndexBuilder;
+
+public class ImpactIndexReader {
+
+	/** The loaded impacts of each reader, the reader is weakly referenced so the impacts die with the reader. */
+	private static final Map<IndexReader, Slot> impactIndexes = new WeakHashMap<IndexReader, Slot>();
+
+	/** The marker of a reader without a usable sidecar. */
+	private static final ImpactIndexReader NONE = new ImpactIndexReader(0d, 0d, 0d, new HashMap<String, Postings>());
+
+	private final double k1;
+	private final double b;
+	private final double scale;
+	private final Map<String, Postings> postings;
+
+	private ImpactIndexReader(double k1, double b, double scale, Map<String, Postings> postings) {
+		this.k1 = k1;
+		this.b = b;
+		this.scale = scale;
+		this.postings = postings;
+	}
+
+	/**
+	 * Get the impacts of the reader, the sidecar is loaded on the first call which finds it built for this reader.
+	 *
+	 * @param ixReader the index reader
+	 * @return the impacts, or null if the index has no sidecar for the version of this reader yet, or if the
+	 *         sidecar is being loaded by another thread.
+	 * @throws IOException if the sidecar could not be read.
+	 */
+	public static ImpactIndexReader getImpactIndex(IndexReader ixReader) throws IOException {
+		Slot slot;
+		synchronized (impactIndexes) {
+			slot = impactIndexes.get(ixReader);
+			if (slot == null) {
+				slot = new Slot();
+				impactIndexes.put(ixReader, slot);
+			}
+		}
+		return slot.get(ixReader);
+	}
+
+	/**
+	 * Load the sidecar of the reader.
+	 *
+	 * @return the impacts, NONE if the sidecar can never be used, or null if it is missing or stale for now.
+	 */
+	private static ImpactIndexReader load(IndexReader ixReader) throws IOException {
+		Directory dir = ixReader.directory();
+		if (!dir.fileExists(ImpactIndexBuilder.IMPACT_FILE_NAME))
+			return null;
+
+		IndexInput in = dir.openInput(ImpactIndexBuilder.IMPACT_FILE_NAME);
+		try {
+			if (in.readInt() != ImpactIndexBuilder.IMPACT_FILE_MAGIC || in.readInt() != ImpactIndexBuilder.IMPACT_FILE_FORMAT)
+				return NONE;
+			if (in.readLong() != ixReader.getVersion())
+				return null; // the sidecar was built for another commit of the index, the new one may not be written yet.
+
+			double k1 = Double.longBitsToDouble(in.readLong());
+			double b = Double.longBitsToDouble(in.readLong());
+			double scale = Double.longBitsToDouble(in.readLong());
+			int termCount = in.readVInt();
+
+			Map<String, Postings> postings = new HashMap<String, Postings>(termCount * 2);
+			for (int t = 0; t < termCount; t++) {
+				String text = in.readString();
+				int count = in.readVInt();
+				int[] docs = new int[count];
+				short[] impacts = new short[count];
+				int doc = 0;
+				for (int i = 0; i < count; i++) {
+					doc += in.readVInt();
+					int zigzag = in.readVInt();
+					docs[i] = doc;
+					impacts[i] = (short) ((zigzag >>> 1) ^ -(zigzag & 1));
+				}
+				postings.put(text, new Postings(docs, impacts));
+			}
+
+			return new ImpactIndexReader(k1, b, scale, postings);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Check if the impacts were built with given BM25 parameters.
+	 */
+	public boolean isBuiltWith(double k1, double b) {
+		return this.k1 == k1 && this.b == b;
+	}
+
+	/**
+	 * @return the factor which turns a quantized impact back into a BM25 score.
+	 */
+	public double scale() {
+		return scale;
+	}
+
+	/**
+	 * Get the postings of a content term.
+	 *
+	 * @param text the term text
+	 * @return the postings, or null if the term is not in the index.
+	 */
+	public Postings postings(String text) {
+		return postings.get(text);
+	}
+
+	/**
+	 * The impacts of one reader, loaded by a single thread.
+	 */
+	private static class Slot {
+
+		private volatile ImpactIndexReader impactIndex;
+		private final AtomicBoolean loading = new AtomicBoolean();
+
+		ImpactIndexReader get(IndexReader ixReader) throws IOException {
+			ImpactIndexReader loaded = impactIndex;
+			if (loaded == null) {
+				if (!loading.compareAndSet(false, true))
+					return null; // another query is loading the impacts.
+				try {
+					loaded = impactIndex;
+					if (loaded == null) {
+						loaded = load(ixReader);
+						impactIndex = loaded;
+					}
+				} finally {
+					loading.set(false);
+				}
+			}
+			return loaded == NONE ? null : loaded;
+		}
+	}
+
+	/**
+	 * The documents of a term with the quantized impact of the term in each document.
+	 */
+	public static class Postings {
+
+		public final int[] docs;
+		public final short[] impacts;
+
+		Postings(int[] docs, short[] impacts) {
+			this.docs = docs;
+			this.impacts = impacts;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a ReaderCache class which builds a value of each index reader once, on a background thread, and keeps it
+ * as long as the reader lives.
+ * </p>
+ *
+ * <p>
+ * The readers are weakly referenced, so the value of a reader dies with the reader, and a reader is kept open until
+ * its value is built. The values are built one at a time on a daemon thread of the cache, which may run other
+ * background work of the owner too (see {@link #submit(Runnable)}).
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.lucene.index.IndexReader;
+
+public abstract class ReaderCache<V> {
+
+	private final String name;
+	private final Map<IndexReader, Future<V>> values = new WeakHashMap<IndexReader, Future<V>>();
+	private final ExecutorService executor;
+
+	/**
+	 * @param threadName the name of the background thread.
+	 * @param name the name of the values, used in the error messages.
+	 */
+	protected ReaderCache(final String threadName, String name) {
+		this.name = name;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Build the value of a reader, on the background thread.
+	 *
+	 * @param ixReader the index reader, open during the call.
+	 * @return the value.
+	 * @throws Exception if the value could not be built.
+	 */
+	protected abstract V build(IndexReader ixReader) throws Exception;
+
+	/**
+	 * Get the future value of the reader, its build is started if it is not started yet.
+	 *
+	 * @param ixReader the index reader.
+	 * @return the future value.
+	 */
+	public Future<V> future(final IndexReader ixReader) {
+		synchronized (values) {
+			Future<V> future = values.get(ixReader);
+			if (future == null) {
+				ixReader.incRef();
+				future = executor.submit(new Callable<V>() {
+					public V call() throws Exception {
+						try {
+							return build(ixReader);
+						} finally {
+							ixReader.decRef();
+						}
+					}
+				});
+				values.put(ixReader, future);
+			}
+			return future;
+		}
+	}
+
+	/**
+	 * Get the value of the reader, waiting for its build if it is still running.
+	 *
+	 * @param ixReader the index reader.
+	 * @return the value.
+	 * @throws IOException if the value could not be built.
+	 */
+	public V get(IndexReader ixReader) throws IOException {
+		try {
+			return future(ixReader).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the " + name);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException("Cannot build the " + name + ": " + cause);
+		}
+	}
+
+	/**
+	 * Run a task on the background thread of the cache, after the builds already started.
+	 *
+	 * @param task the task.
+	 */
+	public void submit(Runnable task) {
+		executor.submit(task);
+	}
+}
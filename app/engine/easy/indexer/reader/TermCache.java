@@ -0,0 +1,394 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a TermCache class which keeps the decoded postings and the idf of the most frequently queried terms of
+ * an index reader, so the postings of a hot term are not decoded from the index again for every query.
+ * </p>
+ *
+ * <p>
+ * The postings of a cached term are kept as primitive document and frequency arrays, and served through a TermDocs
+ * over the arrays, so the scorers read cached and uncached terms the same way. A term is admitted once it has been
+ * queried ADMISSION_QUERY_COUNT times, the query counts are halved when too many terms are tracked so the counts
+ * follow the recent queries. The cache is bounded by the memory of the arrays, the least recently used terms are
+ * evicted first. The cache is kept per reader, so it is never stale.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+import engine.easy.ranking_model.BM25;
+
+public class TermCache {
+
+	/** The default memory of the cached postings of a reader, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 32L << 20;
+
+	/** The number of queries of a term before its postings are cached. */
+	public static final int ADMISSION_QUERY_COUNT = 2;
+
+	/** The number of terms whose query counts are tracked, the counts are halved beyond it. */
+	private static final int MAX_TRACKED_TERMS = 10000;
+
+	/** The number of postings decoded at once while a term is loaded. */
+	private static final int READ_BUFFER_SIZE = 256;
+
+	/** The estimated memory of a cached term besides its postings arrays. */
+	private static final long ENTRY_OVERHEAD_BYTES = 128L;
+
+	/** The caches of each reader, the reader is weakly referenced so the cache dies with the reader. */
+	private static final Map<IndexReader, TermCache> caches = new WeakHashMap<IndexReader, TermCache>();
+
+	private final long maxBytes;
+	private long bytes;
+	private final LinkedHashMap<Term, CachedTerm> terms = new LinkedHashMap<Term, CachedTerm>(16, 0.75f, true);
+	private final Map<Term, int[]> queryCounts = new HashMap<Term, int[]>();
+
+	private long hits;
+	private long misses;
+
+	private TermCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get the term cache of the reader.
+	 *
+	 * @param ixReader the index reader
+	 * @return the term cache of the reader.
+	 */
+	public static TermCache getTermCache(IndexReader ixReader) {
+		synchronized (caches) {
+			TermCache cache = caches.get(ixReader);
+			if (cache == null) {
+				cache = new TermCache(DEFAULT_MAX_BYTES);
+				caches.put(ixReader, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Look up a query term, its query is counted and its postings are cached once the term is hot.
+	 *
+	 * @param ixReader the index reader of this cache
+	 * @param term the query term
+	 * @param docNum the number of documents the idf is computed for
+	 * @return the statistics and the postings of the term.
+	 * @throws IOException if the index could not be read.
+	 */
+	public TermPostings lookup(IndexReader ixReader, Term term, int docNum) throws IOException {
+		boolean admit;
+
+		synchronized (this) {
+			CachedTerm cached = terms.get(term);
+			if (cached != null && cached.docNum == docNum) {
+				hits++;
+				return cached;
+			}
+			misses++;
+			admit = countQuery(term) >= ADMISSION_QUERY_COUNT;
+		}
+
+		int docFreq = ixReader.docFreq(term);
+		if (!admit || estimateBytes(docFreq) > maxBytes / 2)
+			return new TermPostings(term, docFreq, BM25.idf(docNum, docFreq));
+
+		CachedTerm cached = load(ixReader, term, docFreq, docNum);
+		synchronized (this) {
+			CachedTerm old = terms.put(term, cached);
+			if (old != null)
+				bytes -= old.bytes;
+			bytes += cached.bytes;
+			queryCounts.remove(term);
+			evict();
+		}
+		return cached;
+	}
+
+	private int countQuery(Term term) {
+		int[] count = queryCounts.get(term);
+		if (count == null) {
+			if (queryCounts.size() >= MAX_TRACKED_TERMS)
+				decay();
+			count = new int[1];
+			queryCounts.put(term, count);
+		}
+		return ++count[0];
+	}
+
+	/**
+	 * Halve the query counts and forget the terms which were queried once only.
+	 */
+	private void decay() {
+		Iterator<int[]> counts = queryCounts.values().iterator();
+		while (counts.hasNext()) {
+			int[] count = counts.next();
+			count[0] >>= 1;
+			if (count[0] == 0)
+				counts.remove();
+		}
+	}
+
+	private void evict() {
+		Iterator<CachedTerm> cached = terms.values().iterator();
+		while (bytes > maxBytes && cached.hasNext()) {
+			bytes -= cached.next().bytes;
+			cached.remove();
+		}
+	}
+
+	private static long estimateBytes(int docFreq) {
+		return ENTRY_OVERHEAD_BYTES + 8L * docFreq;
+	}
+
+	private static CachedTerm load(IndexReader ixReader, Term term, int docFreq, int docNum) throws IOException {
+		int[][] postings = readPostings(ixReader, term, docFreq);
+		return new CachedTerm(term, docFreq, BM25.idf(docNum, docFreq), docNum, postings[0], postings[1]);
+	}
+
+	/**
+	 * Decode the postings of a term into a document and a frequency array.
+	 */
+	private static int[][] readPostings(IndexReader ixReader, Term term, int docFreq) throws IOException {
+		// the deleted documents are skipped, so the arrays may be shorter than the document frequency.
+		int[] docs = new int[docFreq];
+		int[] freqs = new int[docFreq];
+		int count = 0;
+
+		TermDocs termDocs = ixReader.termDocs(term);
+		try {
+			int[] readDocs = new int[READ_BUFFER_SIZE];
+			int[] readFreqs = new int[READ_BUFFER_SIZE];
+			int read;
+			while ((read = termDocs.read(readDocs, readFreqs)) > 0) {
+				if (count + read > docs.length) {
+					docs = Arrays.copyOf(docs, count + read);
+					freqs = Arrays.copyOf(freqs, count + read);
+				}
+				System.arraycopy(readDocs, 0, docs, count, read);
+				System.arraycopy(readFreqs, 0, freqs, count, read);
+				count += read;
+			}
+		} finally {
+			termDocs.close();
+		}
+
+		if (count < docs.length) {
+			docs = Arrays.copyOf(docs, count);
+			freqs = Arrays.copyOf(freqs, count);
+		}
+		return new int[][] { docs, freqs };
+	}
+
+	/**
+	 * Get the cached postings of a term without counting a query, null if the term is not cached.
+	 */
+	private synchronized CachedTerm getCached(Term term) {
+		return terms.get(term);
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return terms.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * The document frequency, the idf and the postings of a query term.
+	 */
+	public static class TermPostings {
+
+		private final Term term;
+		private final int docFreq;
+		private final double idf;
+
+		TermPostings(Term term, int docFreq, double idf) {
+			this.term = term;
+			this.docFreq = docFreq;
+			this.idf = idf;
+		}
+
+		public Term term() {
+			return term;
+		}
+
+		public int docFreq() {
+			return docFreq;
+		}
+
+		/**
+		 * @return the BM25 idf of the term, see BM25.idf().
+		 */
+		public double idf() {
+			return idf;
+		}
+
+		/**
+		 * Get the postings of the term, they must be closed after use.
+		 *
+		 * @param ixReader the index reader of the cache
+		 * @return the postings of the term.
+		 * @throws IOException if the index could not be read.
+		 */
+		public TermDocs termDocs(IndexReader ixReader) throws IOException {
+			return ixReader.termDocs(term);
+		}
+
+		/**
+		 * @return true if the postings are served from the cache.
+		 */
+		public boolean isCached() {
+			return false;
+		}
+	}
+
+	/**
+	 * A query term with its postings decoded into primitive arrays.
+	 */
+	private static class CachedTerm extends TermPostings {
+
+		private final int docNum;
+		private final int[] docs;
+		private final int[] freqs;
+		private final long bytes;
+
+		CachedTerm(Term term, int docFreq, double idf, int docNum, int[] docs, int[] freqs) {
+			super(term, docFreq, idf);
+			this.docNum = docNum;
+			this.docs = docs;
+			this.freqs = freqs;
+			this.bytes = ENTRY_OVERHEAD_BYTES + 4L * (docs.length + freqs.length);
+		}
+
+		public TermDocs termDocs(IndexReader ixReader) {
+			return new ArrayTermDocs(ixReader, docs, freqs);
+		}
+
+		public boolean isCached() {
+			return true;
+		}
+	}
+
+	/**
+	 * The TermDocs over the cached postings arrays, it behaves like the lucene TermDocs of the term. A seek to another
+	 * term serves its cached postings, or decodes them from the reader if the term is not cached.
+	 */
+	private static class ArrayTermDocs implements TermDocs {
+
+		private final IndexReader ixReader;
+		private int[] docs;
+		private int[] freqs;
+		private int pos = -1;
+
+		ArrayTermDocs(IndexReader ixReader, int[] docs, int[] freqs) {
+			this.ixReader = ixReader;
+			this.docs = docs;
+			this.freqs = freqs;
+		}
+
+		public int doc() {
+			return docs[pos];
+		}
+
+		public int freq() {
+			return freqs[pos];
+		}
+
+		public boolean next() {
+			return ++pos < docs.length;
+		}
+
+		public int read(int[] readDocs, int[] readFreqs) {
+			int count = Math.min(readDocs.length, docs.length - (pos + 1));
+			if (count <= 0)
+				return 0;
+			System.arraycopy(docs, pos + 1, readDocs, 0, count);
+			System.arraycopy(freqs, pos + 1, readFreqs, 0, count);
+			pos += count;
+			return count;
+		}
+
+		/**
+		 * Skip to the first document beyond the current one whose number is greater than or equal to the target,
+		 * with a galloping search from the current position.
+		 */
+		public boolean skipTo(int target) {
+			int low = pos + 1;
+			if (low >= docs.length) {
+				pos = docs.length;
+				return false;
+			}
+
+			int step = 1;
+			int high = low;
+			while (high < docs.length && docs[high] < target) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			if (high >= docs.length)
+				high = docs.length - 1;
+
+			// the first document >= target is in [low, high], if any.
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (docs[mid] < target)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			pos = low;
+			if (pos < docs.length && docs[pos] >= target)
+				return true;
+			pos = docs.length;
+			return false;
+		}
+
+		public void seek(Term term) throws IOException {
+			pos = -1;
+			CachedTerm cached = term != null ? getTermCache(ixReader).getCached(term) : null;
+			if (cached != null) {
+				docs = cached.docs;
+				freqs = cached.freqs;
+			} else if (term != null) {
+				int[][] postings = readPostings(ixReader, term, ixReader.docFreq(term));
+				docs = postings[0];
+				freqs = postings[1];
+			} else {
+				docs = new int[0];
+				freqs = new int[0];
+			}
+		}
+
+		public void seek(TermEnum termEnum) throws IOException {
+			seek(termEnum.term());
+		}
+
+		public void close() {
+		}
+	}
+}
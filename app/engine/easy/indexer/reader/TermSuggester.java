@@ -0,0 +1,317 @@
+package engine.easy.indexer.reader;
+
+/**
+ * <p>
+ * This is a TermSuggester class which suggests the spelling of a query term from the terms of the collection, so
+ * the names of the collection are suggested as well as the english words.
+ * </p>
+ *
+ * <p>
+ * The vocabulary is read from the content terms of the index with their document frequencies. A term is found by
+ * the letter trigrams it shares with the misspelled term, and the candidates within the edit distance are ranked by
+ * their edit distance first and their document frequency next. Only a term more frequent than the misspelled one is
+ * suggested, so a correct term is left alone. The suggester of a reader is built in the background when the reader
+ * is opened, and the suggester of the previous index generation serves the requests until the new one is ready.
+ * The suggestions are index terms, so they are stemmed like the query terms they are searched with.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+
+import engine.easy.util.AppConstants;
+
+public class TermSuggester {
+
+	/** The length of the shortest term which is corrected. */
+	public static final int MIN_TERM_LENGTH = 3;
+
+	/** The length of a term up to which a single edit is allowed, two edits beyond it. */
+	public static final int SINGLE_EDIT_TERM_LENGTH = 4;
+
+	private static final int GRAM_LENGTH = 3;
+	private static final char PADDING = '$';
+
+	/** The suggesters of the opened readers. */
+	private static final ReaderCache<TermSuggester> suggesters = new ReaderCache<TermSuggester>("TermSuggester", "term suggester") {
+		protected TermSuggester build(IndexReader ixReader) throws IOException {
+			TermSuggester suggester = TermSuggester.build(ixReader, AppConstants.CONTENT_FIELD);
+			TermSuggester previous = latest;
+			if (previous == null || previous.generation <= suggester.generation)
+				latest = suggester;
+			return suggester;
+		}
+	};
+
+	/** The last built suggester, which serves the requests while the suggester of a new reader is built. */
+	private static volatile TermSuggester latest;
+
+	private final long generation;
+	private final String[] terms; // sorted, as enumerated by the reader.
+	private final int[] docFreqs;
+	private final Map<String, int[]> grams; // the ids of the terms having a trigram, in increasing order.
+
+	private TermSuggester(long generation, String[] terms, int[] docFreqs, Map<String, int[]> grams) {
+		this.generation = generation;
+		this.terms = terms;
+		this.docFreqs = docFreqs;
+		this.grams = grams;
+	}
+
+	/**
+	 * Start building the suggester of the reader in the background, if it is not built yet.
+	 *
+	 * @param ixReader the opened index reader.
+	 */
+	public static void prepare(IndexReader ixReader) {
+		suggesters.future(ixReader);
+	}
+
+	/**
+	 * Get the suggester of the reader. The suggester of the previous generation is returned while the one of the
+	 * reader is being built, the call only waits when no suggester has been built yet.
+	 *
+	 * @param ixReader the index reader.
+	 * @return the suggester.
+	 * @throws IOException if the index could not be read.
+	 */
+	public static TermSuggester getSuggester(IndexReader ixReader) throws IOException {
+		TermSuggester previous = latest;
+		if (!suggesters.future(ixReader).isDone() && previous != null)
+			return previous;
+
+		return suggesters.get(ixReader);
+	}
+
+	private static TermSuggester build(IndexReader ixReader, String fdname) throws IOException {
+		List<String> termList = new ArrayList<String>();
+		int[] docFreqs = new int[1024];
+
+		TermEnum tmEnum = ixReader.terms(new Term(fdname, ""));
+		try {
+			do {
+				Term term = tmEnum.term();
+				if (term == null || !term.field().equals(fdname))
+					break;
+				if (!isWord(term.text()))
+					continue;
+
+				if (termList.size() == docFreqs.length)
+					docFreqs = Arrays.copyOf(docFreqs, docFreqs.length << 1);
+				docFreqs[termList.size()] = tmEnum.docFreq();
+				termList.add(term.text());
+			} while (tmEnum.next());
+		} finally {
+			tmEnum.close();
+		}
+		String[] terms = termList.toArray(new String[termList.size()]);
+
+		// count the terms of each trigram first, so the id arrays are allocated at their size.
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+		for (String term : terms) {
+			for (String gram : grams(term)) {
+				int[] count = counts.get(gram);
+				if (count == null) {
+					count = new int[1];
+					counts.put(gram, count);
+				}
+				count[0]++;
+			}
+		}
+
+		Map<String, int[]> grams = new HashMap<String, int[]>(counts.size() * 2);
+		for (Map.Entry<String, int[]> count : counts.entrySet()) {
+			grams.put(count.getKey(), new int[count.getValue()[0]]);
+			count.getValue()[0] = 0;
+		}
+		for (int id = 0; id < terms.length; id++) {
+			for (String gram : grams(terms[id])) {
+				int[] count = counts.get(gram);
+				int[] ids = grams.get(gram);
+				if (count[0] == 0 || ids[count[0] - 1] != id) // a term repeating a trigram is kept once.
+					ids[count[0]++] = id;
+			}
+		}
+		for (Map.Entry<String, int[]> count : counts.entrySet()) {
+			int size = count.getValue()[0];
+			int[] ids = grams.get(count.getKey());
+			if (size < ids.length)
+				grams.put(count.getKey(), Arrays.copyOf(ids, size));
+		}
+
+		return new TermSuggester(ixReader.getVersion(), terms, Arrays.copyOf(docFreqs, terms.length), grams);
+	}
+
+	private static boolean isWord(String text) {
+		if (text.length() < 2)
+			return false;
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isLetter(text.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static String[] grams(String term) {
+		String padded = PADDING + term + PADDING;
+		String[] grams = new String[padded.length() - GRAM_LENGTH + 1];
+		for (int i = 0; i < grams.length; i++)
+			grams[i] = padded.substring(i, i + GRAM_LENGTH);
+		return grams;
+	}
+
+	/**
+	 * Suggest the spellings of an analyzed query term.
+	 *
+	 * @param term the analyzed term
+	 * @param max the maximum number of suggestions
+	 * @return the suggested terms, the most likely first, empty if the term needs no correction.
+	 */
+	public String[] suggest(String term, int max) {
+		if (term.length() < MIN_TERM_LENGTH || max <= 0)
+			return new String[0];
+
+		final int maxEdits = term.length() <= SINGLE_EDIT_TERM_LENGTH ? 1 : 2;
+		int termFreq = docFreq(term);
+
+		// count the trigrams each term shares with the misspelled term.
+		String[] termGrams = grams(term);
+		int[] shared = new int[terms.length];
+		int[] touched = new int[16];
+		int touchedCount = 0;
+		for (int i = 0; i < termGrams.length; i++) {
+			if (indexOf(termGrams, termGrams[i]) < i)
+				continue; // a repeated trigram is counted once.
+
+			int[] ids = grams.get(termGrams[i]);
+			if (ids == null)
+				continue;
+			for (int id : ids) {
+				if (shared[id]++ == 0) {
+					if (touchedCount == touched.length)
+						touched = Arrays.copyOf(touched, touchedCount << 1);
+					touched[touchedCount++] = id;
+				}
+			}
+		}
+
+		// an edit changes at most four trigrams (a transposition), so a close term shares the others.
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (int i = 0; i < touchedCount; i++) {
+			int id = touched[i];
+			String candidate = terms[id];
+			if (docFreqs[id] <= termFreq || Math.abs(candidate.length() - term.length()) > maxEdits)
+				continue;
+			if (shared[id] < Math.max(candidate.length(), term.length()) - 4 * maxEdits)
+				continue;
+
+			int distance = distance(term, candidate, maxEdits);
+			if (distance <= maxEdits)
+				candidates.add(new Candidate(candidate, distance, docFreqs[id]));
+		}
+
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			public int compare(Candidate c1, Candidate c2) {
+				if (c1.distance != c2.distance)
+					return c1.distance - c2.distance;
+				if (c1.docFreq != c2.docFreq)
+					return c2.docFreq - c1.docFreq;
+				return c1.term.compareTo(c2.term);
+			}
+		});
+
+		String[] suggestions = new String[Math.min(max, candidates.size())];
+		for (int i = 0; i < suggestions.length; i++)
+			suggestions[i] = candidates.get(i).term;
+		return suggestions;
+	}
+
+	private static int indexOf(String[] array, String value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i].equals(value))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compute the edit distance with the adjacent transpositions (optimal string alignment), the computation stops
+	 * as soon as the distance exceeds the maximum.
+	 *
+	 * @return the distance, or maxEdits + 1 if it exceeds maxEdits.
+	 */
+	static int distance(String s, String t, int maxEdits) {
+		int[] previous2 = new int[t.length() + 1];
+		int[] previous = new int[t.length() + 1];
+		int[] current = new int[t.length() + 1];
+		for (int j = 0; j <= t.length(); j++)
+			previous[j] = j;
+
+		for (int i = 1; i <= s.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= t.length(); j++) {
+				int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+				int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+				if (i > 1 && j > 1 && s.charAt(i - 1) == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1))
+					d = Math.min(d, previous2[j - 2] + 1);
+				current[j] = d;
+				rowMin = Math.min(rowMin, d);
+			}
+			if (rowMin > maxEdits)
+				return maxEdits + 1;
+
+			int[] rotate = previous2;
+			previous2 = previous;
+			previous = current;
+			current = rotate;
+		}
+		return Math.min(previous[t.length()], maxEdits + 1);
+	}
+
+	/**
+	 * @return the document frequency of the term, or 0 if it is not in the vocabulary.
+	 */
+	public int docFreq(String term) {
+		int id = Arrays.binarySearch(terms, term);
+		return id >= 0 ? docFreqs[id] : 0;
+	}
+
+	/**
+	 * @return the number of terms of the vocabulary.
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * @return the version of the index commit this suggester belongs to.
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	private static class Candidate {
+
+		private final String term;
+		private final int distance;
+		private final int docFreq;
+
+		Candidate(String term, int distance, int docFreq) {
+			this.term = term;
+			this.distance = distance;
+			this.docFreq = docFreq;
+		}
+	}
+}
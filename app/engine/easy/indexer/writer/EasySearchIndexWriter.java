@@ -32,9 +32,12 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 
+import engine.easy.analyzer.TokenRecorder;
 import engine.easy.util.ArrayUtil;
 
 public class EasySearchIndexWriter implements Closeable {
@@ -42,7 +45,13 @@ public class EasySearchIndexWriter implements Closeable {
     private IndexWriter indexWriter;
     private static final String EXTRA_DATA_FIELD_NAME_SUFFIX = "_etdat";
     private static final int READ_CHAR_BUF_SIZE = 0x40000;
-    private static char readCharBuf[] = new char[0x40000];
+
+    /** The token recorders of each thread, one for each tokenized field of a document. */
+    private static final ThreadLocal<List<TokenRecorder>> recorders = new ThreadLocal<List<TokenRecorder>>() {
+        protected List<TokenRecorder> initialValue() {
+            return new ArrayList<TokenRecorder>();
+        }
+    };
 
 	public EasySearchIndexWriter(IndexWriter ixWriter) {
 		  this.indexWriter = ixWriter;
@@ -60,34 +69,87 @@ public class EasySearchIndexWriter implements Closeable {
 	/**
 	 * Add the document in the index file.
 	 * 
+	 * <p>
+	 * Every tokenized field is analyzed once, its tokens are recorded while the extra data is counted and the
+	 * recording is replayed to the lucene index writer, so the text is not analyzed a second time by lucene.
+	 * </p>
+	 * 
      * @throws IOException if the file would have any IO operation.
 	 */
 	public void addDocument(Document doc, Analyzer analyzer) throws IOException {
+		indexWriter.addDocument(indexDocument(doc, analyzer), analyzer);
+	}
+
+	/**
+	 * Replace the documents containing the term, usually the document id, with the given document.
+	 * 
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public void updateDocument(Term term, Document doc) throws IOException {
+		Analyzer analyzer = indexWriter.getAnalyzer();
+		indexWriter.updateDocument(term, indexDocument(doc, analyzer), analyzer);
+	}
+
+	/**
+	 * Delete the documents containing the term, usually the document id.
+	 * 
+     * @throws IOException if the file would have any IO operation.
+	 */
+	public void deleteDocuments(Term term) throws IOException {
+		indexWriter.deleteDocuments(term);
+	}
+
+	/**
+	 * Create the document handed to lucene, with the replayed tokens and the extra data fields.
+	 * 
+	 * @return it returns the document to index, the caller's document is left unchanged.
+     * @throws IOException if the file would have any IO operation.
+	 */
+	private Document indexDocument(Document doc, Analyzer analyzer) throws IOException {
 		ArrayList extraDataFields = new ArrayList();
+		List<TokenRecorder> fieldRecorders = recorders.get();
+		int recorderCount = 0;
+
+		Document indexDoc = new Document();
+		indexDoc.setBoost(doc.getBoost());
+
 		List fdlist = doc.getFields();
 		for (int i = 0; i < fdlist.size(); i++) {
-			Object obj = fdlist.get(i);
-			if (obj instanceof Field) {
-				Field field = (Field) obj;
-				if (field.isIndexed()) {
-					int extraData[] = extraData(field, analyzer);
-					byte data[] = ArrayUtil.toBytes(extraData);
-					if (data != null) {
-						Field dataField = new Field(
-								extraDataFieldName(field.name()), data,
-								org.apache.lucene.document.Field.Store.YES);
-						doc.add(dataField);
-						extraDataFields.add(dataField);
-					}
-				}
+			Fieldable fieldable = (Fieldable) fdlist.get(i);
+			if (!(fieldable instanceof Field) || !fieldable.isIndexed()) {
+				indexDoc.add(fieldable);
+				continue;
 			}
+
+			Field field = (Field) fieldable;
+			int extraData[];
+			if (field.isTokenized()) {
+				if (recorderCount == fieldRecorders.size())
+					fieldRecorders.add(new TokenRecorder());
+				TokenRecorder recorder = fieldRecorders.get(recorderCount++);
+
+				recorder.record(tokenStream(field, analyzer));
+				extraData = new int[] { recorder.tokenCount(), recorder.uniqueTermCount() };
+
+				if (field.isStored())
+					indexDoc.add(new Field(field.name(), field.stringValue(), Field.Store.YES, Field.Index.NO));
+				indexDoc.add(replayField(field, recorder));
+			} else {
+				extraData = new int[] { 1, 1 };
+				indexDoc.add(field);
+			}
+
+			byte data[] = ArrayUtil.toBytes(extraData);
+			Field dataField = new Field(
+					extraDataFieldName(field.name()), data,
+					org.apache.lucene.document.Field.Store.YES);
+			extraDataFields.add(dataField);
 		}
 
-		indexWriter.addDocument(doc, analyzer);
 		for (int i = 0; i < extraDataFields.size(); i++)
-			doc.removeField(((Field) extraDataFields.get(i)).name());
+			indexDoc.add((Field) extraDataFields.get(i));
 
-		extraDataFields.clear();
+		return indexDoc;
 	}
 
 	public void close() throws IOException {
@@ -112,22 +174,15 @@ public class EasySearchIndexWriter implements Closeable {
     }
 
 	/**
-	 * Read the extra data field information
+	 * Get the analyzed token stream of the field value.
 	 * 
-	 * @return it returns the no: of token streams for the extra data field information.
+	 * @return it returns the token stream of the field.
      * @throws IOException if the file would have any IO operation.
 	 */
-    private int[] extraData(Field field, Analyzer analyzer)
+    private TokenStream tokenStream(Field field, Analyzer analyzer)
         throws IOException
     {
-        if(!field.isIndexed())
-            return null;
-        if(!field.isTokenized())
-            return (new int[] {
-                1, 1
-            });
         String strv = field.stringValue();
-        int v[];
         if(strv == null)
         {
             Reader readerv = field.readerValue();
@@ -135,13 +190,8 @@ public class EasySearchIndexWriter implements Closeable {
             {
                 TokenStream tsv = field.tokenStreamValue();
                 if(tsv == null)
-                {
                     throw new IllegalArgumentException((new StringBuilder("Cannot obtain field value. field_name: ")).append(field.name()).append(".").toString());
-                } else
-                {
-                    v = countTokenStream(tsv);
-                    return v;
-                }
+                return tsv;
             }
             strv = readAll(readerv);
             if(strv == null)
@@ -149,51 +199,50 @@ public class EasySearchIndexWriter implements Closeable {
             
             field.setValue(strv);
         }
-        BufferedReader reader = new BufferedReader(new StringReader(strv));
-        TokenStream ts = analyzer.tokenStream(field.name(), reader);
-        v = countTokenStream(ts);
-        ts.close();
-        reader.close();
-        return v;
+        return analyzer.tokenStream(field.name(), new StringReader(strv));
     }
 
 	/**
-	 * Read all the information of field
+	 * Create the indexed field which replays the recorded tokens with the index options of the given field.
 	 * 
-	 * @return it returns the information of given field in text.
-     * @throws IOException if the file would have any IO operation.
+	 * @return it returns the indexed replay field.
 	 */
-    private String readAll(Reader reader)
-        throws IOException
+    private static Field replayField(Field field, TokenRecorder recorder)
     {
-        StringBuilder sb = new StringBuilder();
-        for(int read = reader.read(readCharBuf); read != -1; read = reader.read(readCharBuf))
-            sb.append(readCharBuf, 0, read);
+        Field.TermVector termVector = Field.TermVector.NO;
+        if(field.isTermVectorStored())
+        {
+            if(field.isStorePositionWithTermVector() && field.isStoreOffsetWithTermVector())
+                termVector = Field.TermVector.WITH_POSITIONS_OFFSETS;
+            else if(field.isStorePositionWithTermVector())
+                termVector = Field.TermVector.WITH_POSITIONS;
+            else if(field.isStoreOffsetWithTermVector())
+                termVector = Field.TermVector.WITH_OFFSETS;
+            else
+                termVector = Field.TermVector.YES;
+        }
 
-        return sb.toString();
+        Field replay = new Field(field.name(), recorder.replay(), termVector);
+        replay.setBoost(field.getBoost());
+        replay.setOmitNorms(field.getOmitNorms());
+        replay.setOmitTermFreqAndPositions(field.getOmitTermFreqAndPositions());
+        return replay;
     }
 
 	/**
-	 * Count the token stream tokens.
+	 * Read all the information of field
 	 * 
-	 * @return it returns the no:of stream tokens.
+	 * @return it returns the information of given field in text.
      * @throws IOException if the file would have any IO operation.
 	 */
-    private static int[] countTokenStream(TokenStream tokenStream)
+    private String readAll(Reader reader)
         throws IOException
     {
-        int v[] = new int[2];
-        HashSet countTokenStreamBuffer = new HashSet();
-		TermAttribute termAtt = tokenStream.getAttribute(TermAttribute.class); 
-        
-		while (tokenStream.incrementToken()) {
-            v[0]++;
-            countTokenStreamBuffer.add(new String(termAtt.termBuffer(), 0, termAtt.termLength()));
-		}
+        StringBuilder sb = new StringBuilder();
+        char readCharBuf[] = new char[READ_CHAR_BUF_SIZE]; // per call, the documents are added from several threads.
+        for(int read = reader.read(readCharBuf); read != -1; read = reader.read(readCharBuf))
+            sb.append(readCharBuf, 0, read);
 
-		v[1] = countTokenStreamBuffer.size();
-        tokenStream.reset();
-        countTokenStreamBuffer.clear();
-        return v;
+        return sb.toString();
     }
 }
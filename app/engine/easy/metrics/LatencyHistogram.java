@@ -0,0 +1,67 @@
+package engine.easy.metrics;
+
+/**
+ * <p>
+ * This is a LatencyHistogram class which counts the latencies of an operation in fixed buckets, so the quantiles
+ * of the latency are estimated from the bucket counts.
+ * </p>
+ *
+ * <p>
+ * The buckets grow by 1, 2.5 and 5 steps from 10 micro seconds to 10 seconds. The counts are kept in atomic arrays,
+ * so recording a latency is lock free and never allocates, whatever the number of threads recording.
+ * </p>
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+	/** The upper bounds of the buckets in nano seconds, the last bucket has no bound. */
+	static final long[] BOUNDS = {
+		10000L, 25000L, 50000L,
+		100000L, 250000L, 500000L,
+		1000000L, 2500000L, 5000000L,
+		10000000L, 25000000L, 50000000L,
+		100000000L, 250000000L, 500000000L,
+		1000000000L, 2500000000L, 5000000000L,
+		10000000000L
+	};
+
+	private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param nanos the latency in nano seconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+
+		int bucket = 0;
+		while (bucket < BOUNDS.length && nanos > BOUNDS[bucket])
+			bucket++;
+		counts.incrementAndGet(bucket);
+		sumNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * @return a copy of the bucket counts, the last one counts the latencies above every bound.
+	 */
+	public long[] counts() {
+		long[] copy = new long[counts.length()];
+		for (int i = 0; i < copy.length; i++)
+			copy[i] = counts.get(i);
+		return copy;
+	}
+
+	/**
+	 * @return the sum of the recorded latencies in nano seconds.
+	 */
+	public long sumNanos() {
+		return sumNanos.get();
+	}
+}
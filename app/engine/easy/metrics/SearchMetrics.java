@@ -0,0 +1,138 @@
+package engine.easy.metrics;
+
+/**
+ * <p>
+ * This is a SearchMetrics class which keeps the latency histograms of the search stages and of the requests and the
+ * counts of the requests answered busy, and writes them in the Prometheus text format.
+ * </p>
+ *
+ * <p>
+ * The histograms are shared by the whole JVM and recorded without any lock. The stages are recorded where the search
+ * engine runs them (see SearchStage), the requests by the name of the controller action. The latencies are exposed
+ * in seconds as cumulative buckets, so the quantiles of any window are computed on the server with
+ * histogram_quantile.
+ * </p>
+ *
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SearchMetrics {
+
+	/** The content type of the Prometheus text format. */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String STAGE_METRIC = "easysearch_stage_seconds";
+	private static final String REQUEST_METRIC = "easysearch_request_seconds";
+	private static final String SHED_METRIC = "easysearch_shed_requests_total";
+
+	private static final LatencyHistogram[] stages = new LatencyHistogram[SearchStage.values().length];
+	private static final ConcurrentMap<String, LatencyHistogram> requests = new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final ConcurrentMap<String, AtomicLong> shedRequests = new ConcurrentHashMap<String, AtomicLong>();
+
+	static {
+		for (int i = 0; i < stages.length; i++)
+			stages[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * Record the latency of a search stage.
+	 *
+	 * @param stage the stage
+	 * @param nanos the latency in nano seconds
+	 */
+	public static void record(SearchStage stage, long nanos) {
+		stages[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Record the latency of a request.
+	 *
+	 * @param action the name of the request action
+	 * @param nanos the latency in nano seconds
+	 */
+	public static void recordRequest(String action, long nanos) {
+		LatencyHistogram histogram = requests.get(action);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = requests.putIfAbsent(action, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Count a request which was answered busy, because the searches were saturated or the search was too slow.
+	 *
+	 * @param action the name of the request action
+	 * @param reason the reason, "rejected" or "timeout"
+	 */
+	public static void recordShed(String action, String reason) {
+		String key = "action=\"" + escape(action) + "\",reason=\"" + escape(reason) + "\"";
+		AtomicLong count = shedRequests.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = shedRequests.putIfAbsent(key, created);
+			if (count == null)
+				count = created;
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * @return the latency histogram of a stage.
+	 */
+	public static LatencyHistogram getHistogram(SearchStage stage) {
+		return stages[stage.ordinal()];
+	}
+
+	/**
+	 * Write the histograms in the Prometheus text format.
+	 *
+	 * @return the metrics text.
+	 */
+	public static String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("# HELP ").append(STAGE_METRIC).append(" The latency of the search stages.\n");
+		sb.append("# TYPE ").append(STAGE_METRIC).append(" histogram\n");
+		for (SearchStage stage : SearchStage.values())
+			appendHistogram(sb, STAGE_METRIC, "stage", stage.label(), stages[stage.ordinal()]);
+
+		sb.append("# HELP ").append(REQUEST_METRIC).append(" The latency of the requests.\n");
+		sb.append("# TYPE ").append(REQUEST_METRIC).append(" histogram\n");
+		for (Map.Entry<String, LatencyHistogram> request : new TreeMap<String, LatencyHistogram>(requests).entrySet())
+			appendHistogram(sb, REQUEST_METRIC, "action", request.getKey(), request.getValue());
+
+		sb.append("# HELP ").append(SHED_METRIC).append(" The requests answered busy.\n");
+		sb.append("# TYPE ").append(SHED_METRIC).append(" counter\n");
+		for (Map.Entry<String, AtomicLong> shed : new TreeMap<String, AtomicLong>(shedRequests).entrySet())
+			sb.append(SHED_METRIC).append('{').append(shed.getKey()).append("} ").append(shed.getValue().get()).append('\n');
+
+		return sb.toString();
+	}
+
+	private static void appendHistogram(StringBuilder sb, String metric, String labelName, String labelValue, LatencyHistogram histogram) {
+		String label = labelName + "=\"" + escape(labelValue) + "\"";
+		long[] counts = histogram.counts();
+
+		// the buckets are cumulative, the count is their total so they agree with each other.
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			String le = i < LatencyHistogram.BOUNDS.length ? Double.toString(LatencyHistogram.BOUNDS[i] / 1e9) : "+Inf";
+			sb.append(metric).append("_bucket{").append(label).append(",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+		}
+		sb.append(metric).append("_sum{").append(label).append("} ").append(histogram.sumNanos() / 1e9).append('\n');
+		sb.append(metric).append("_count{").append(label).append("} ").append(cumulative).append('\n');
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
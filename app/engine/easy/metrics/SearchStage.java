@@ -0,0 +1,41 @@
+package engine.easy.metrics;
+
+/**
+ * This is a SearchStage enum which names the stages of a search request, each stage has its own latency histogram.
+ * The stages which are fused in one loop over the postings are measured together, timing each posting would cost
+ * more than the work it measures.
+ *
+ */
+public enum SearchStage {
+
+	/** Parse and analyze the query text. */
+	PARSE,
+
+	/** Look up the query terms and open their postings. */
+	POSTINGS,
+
+	/** Get the collection statistics and the document length column of the searched field. */
+	DOC_LENGTH,
+
+	/** Traverse the postings and accumulate the BM25 scores, with the top results for the document at a time scorer. */
+	SCORING,
+
+	/** Select the top results from the accumulated scores. */
+	TOP_K,
+
+	/** Load the document ids of the top results. */
+	DOCUMENTS,
+
+	/** Create the snippets of the displayed results. */
+	SNIPPETS,
+
+	/** Expand the query from the relevance feedback. */
+	FEEDBACK;
+
+	/**
+	 * @return the label value of the stage.
+	 */
+	public String label() {
+		return name().toLowerCase();
+	}
+}
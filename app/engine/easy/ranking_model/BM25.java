@@ -76,6 +76,62 @@ public class BM25 {
     }
 
 
+    /**
+     * Uses BM25 to compute a weight for a term in a document, with the idf of the term computed
+     * once by idf(). The weight is exactly the one of score(), only the logarithm is not computed
+     * again for every posting.
+     * @param tf The term frequency in the document
+     * @param docLength the document's length
+     * @param averageDocumentLength average document length
+     * @param queryFrequency the term frequency in the query
+     * @param idf the idf of the term, as computed by idf()
+     * @return the score assigned to a document with the given
+     *         tf and docLength, and other preset parameters
+     */
+    public final double score(double tf, 
+    		double docLength, 
+    		double averageDocumentLength, 
+    		double queryFrequency, 
+    		double idf) {
+    	
+            double K = k_1 * ((1 - b) + ((b * docLength) / averageDocumentLength));
+            double weight = ( ((k_1 + 1d) * tf) / (K + tf) );	//first part
+            weight = weight * ( ((k_3 + 1) * queryFrequency) / (k_3 + queryFrequency) );	//second part
+            
+            // multiply the weight with idf 
+            return weight * idf;
+    }
+
+    /**
+     * Returns the idf part of the formula, which only depends on the collection statistics of the term.
+     * @param numberOfDocuments number of documents
+     * @param documentFrequency the document frequency of the term
+     * @return the idf of the term
+     */
+    public static double idf(double numberOfDocuments, double documentFrequency) {
+            return Math.log((numberOfDocuments - documentFrequency + 0.5d) / (documentFrequency + 0.5d));
+    }
+
+    /**
+     * Returns an upper bound of the score a term can give to any document. The first part of the
+     * formula tends to (k_1 + 1) when tf grows, for every document length, so the bound only
+     * depends on the collection statistics of the term.
+     * @param numberOfDocuments number of documents
+     * @param queryFrequency the term frequency in the query
+     * @param documentFrequency the document frequency of the term
+     * @return the highest score the term can assign to a document
+     */
+    public final double upperBound(double numberOfDocuments, 
+    		double queryFrequency, 
+    		double documentFrequency) {
+    	
+            double weight = ( ((k_3 + 1) * queryFrequency) / (k_3 + queryFrequency) );	//second part
+            weight = weight * Math.log((numberOfDocuments - documentFrequency + 0.5d) / (documentFrequency + 0.5d));
+            
+            // a negative weight is highest for the smallest first part, which tends to 0.
+            return weight > 0d ? (k_1 + 1d) * weight : 0d;
+    }
+
     /**
      * Sets the b parameter to BM25 ranking formula
      * @param b the b parameter value to use.
@@ -92,4 +148,29 @@ public class BM25 {
         return this.b;
     }
 
+    /**
+     * Sets the k_1 parameter to BM25 ranking formula
+     * @param k_1 the k_1 parameter value to use.
+     */
+    public void setK1(double k_1) {
+        this.k_1 = k_1;
+    }
+
+    /**
+     * Returns the k_1 parameter to the BM25 ranking formula as set by setK1()
+     */
+    public double getK1() {
+        return this.k_1;
+    }
+
+    /**
+     * Returns the query part of the formula, the document part of a score multiplied with this
+     * weight gives the score for the given query frequency.
+     * @param queryFrequency the term frequency in the query
+     * @return the query frequency weight
+     */
+    public final double queryWeight(double queryFrequency) {
+            return ( ((k_3 + 1) * queryFrequency) / (k_3 + queryFrequency) );
+    }
+
 }
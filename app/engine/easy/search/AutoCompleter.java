@@ -0,0 +1,302 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a AutoCompleter class which completes the prefix of a query from the past queries and the words of the
+ * collection, the most frequent first.
+ * </p>
+ *
+ * <p>
+ * The completions are served from immutable completion indexes (see CompletionIndex), so a lookup never waits for a
+ * lock or a build. The words of a reader are the lower cased, unstemmed words of the stored content, weighted by
+ * their document frequency, the words of a single document are left out. Their index is built in the background
+ * when the reader is opened, and the index of the previous generation serves the lookups until it is ready. The
+ * past queries are counted in a bounded log, the counts are halved when too many queries are logged, and their
+ * index is built again in the background once the log has changed.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.Version;
+
+import engine.easy.analyzer.EasySearchStopAnalyzer;
+import engine.easy.indexer.reader.ReaderCache;
+import engine.easy.util.AppConstants;
+
+public class AutoCompleter {
+
+	private static final Logger log = Logger.getLogger(AutoCompleter.class);
+
+	/** The default number of completions of a prefix. */
+	public static final int DEFAULT_COMPLETIONS = 10;
+
+	/** The number of distinct queries kept in the log, the counts are halved beyond it. */
+	public static final int MAX_LOGGED_QUERIES = 10000;
+
+	/** The number of documents a word must occur in to be completed, which drops most of the misspellings. */
+	public static final int MIN_WORD_DOC_FREQ = 2;
+
+	/** The longest query which is logged. */
+	private static final int MAX_QUERY_LENGTH = 200;
+
+	/** The word indexes of the opened readers, their thread builds the query index too. */
+	private static final ReaderCache<CompletionIndex> wordIndexes = new ReaderCache<CompletionIndex>("AutoCompleter", "word index") {
+		protected CompletionIndex build(IndexReader ixReader) throws IOException {
+			CompletionIndex index = buildWordIndex(ixReader);
+			synchronized (AutoCompleter.class) {
+				if (ixReader.getVersion() >= latestGeneration) {
+					latestWordIndex = index;
+					latestGeneration = ixReader.getVersion();
+				}
+			}
+			return index;
+		}
+	};
+
+	/** The last built word index, which serves the lookups while the index of a new reader is built. */
+	private static volatile CompletionIndex latestWordIndex = CompletionIndex.EMPTY;
+	private static long latestGeneration = Long.MIN_VALUE;
+
+	private final Map<String, int[]> queryCounts = new HashMap<String, int[]>();
+	private long queryLogVersion;
+	private volatile CompletionIndex queryIndex = CompletionIndex.EMPTY;
+	private volatile long queryIndexVersion;
+	private final AtomicBoolean queryIndexBuilding = new AtomicBoolean();
+
+	/**
+	 * Start building the word index of the reader in the background, if it is not built yet.
+	 *
+	 * @param ixReader the opened index reader.
+	 */
+	public static void prepare(IndexReader ixReader) {
+		wordIndexes.future(ixReader);
+	}
+
+	/**
+	 * Wait until the word index of the reader is built.
+	 *
+	 * @param ixReader the opened index reader.
+	 * @throws IOException if the index could not be read.
+	 */
+	public static void awaitPrepared(IndexReader ixReader) throws IOException {
+		wordIndexes.get(ixReader);
+	}
+
+	/**
+	 * Get the word index of the reader without waiting, the index of the previous generation is returned while the
+	 * index of the reader is being built.
+	 */
+	private static CompletionIndex getWordIndex(IndexReader ixReader) {
+		Future<CompletionIndex> future = wordIndexes.future(ixReader);
+		if (!future.isDone())
+			return latestWordIndex;
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.error("getWordIndex failed", e.getCause());
+		}
+		return latestWordIndex;
+	}
+
+	/**
+	 * Count the document frequency of the unstemmed words of the stored content.
+	 *
+	 * @throws IOException if the index could not be read.
+	 */
+	private static CompletionIndex buildWordIndex(IndexReader ixReader) throws IOException {
+		FieldSelector selector = new MapFieldSelector(new String[] { AppConstants.CONTENT_FIELD });
+		boolean enablePositionIncrements = StopFilter.getEnablePositionIncrementsVersionDefault(Version.LUCENE_30);
+		Map<String, Integer> docFreqs = new HashMap<String, Integer>();
+		Set<String> docWords = new LinkedHashSet<String>();
+
+		for (int docId = 0; docId < ixReader.maxDoc(); docId++) {
+			if (ixReader.isDeleted(docId))
+				continue;
+
+			Document doc = ixReader.document(docId, selector);
+			String text = doc.get(AppConstants.CONTENT_FIELD);
+			if (text == null)
+				continue;
+
+			TokenStream stream = new StopFilter(enablePositionIncrements, new LowerCaseFilter(new StandardFilter(
+					new StandardTokenizer(Version.LUCENE_30, new StringReader(text)))), EasySearchStopAnalyzer.ENGLISH_STOP_WORDS_SET);
+			TermAttribute termAtt = stream.addAttribute(TermAttribute.class);
+			docWords.clear();
+			while (stream.incrementToken()) {
+				if (isWord(termAtt.term()))
+					docWords.add(termAtt.term());
+			}
+			stream.close();
+
+			for (String word : docWords) {
+				Integer docFreq = docFreqs.get(word);
+				docFreqs.put(word, Integer.valueOf(docFreq == null ? 1 : docFreq.intValue() + 1));
+			}
+		}
+
+		Iterator<Integer> counts = docFreqs.values().iterator();
+		while (counts.hasNext()) {
+			if (counts.next().intValue() < MIN_WORD_DOC_FREQ)
+				counts.remove();
+		}
+		return new CompletionIndex(docFreqs);
+	}
+
+	private static boolean isWord(String text) {
+		if (text.length() < 2)
+			return false;
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isLetter(text.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Log a query, so it is offered as a completion of its prefixes.
+	 *
+	 * @param query the raw query
+	 */
+	public void recordQuery(String query) {
+		String key = normalize(query).trim();
+		if (key.length() == 0 || key.length() > MAX_QUERY_LENGTH)
+			return;
+
+		synchronized (queryCounts) {
+			int[] count = queryCounts.get(key);
+			if (count == null) {
+				if (queryCounts.size() >= MAX_LOGGED_QUERIES)
+					decay();
+				count = new int[1];
+				queryCounts.put(key, count);
+			}
+			count[0]++;
+			queryLogVersion++;
+		}
+	}
+
+	/**
+	 * Halve the query counts and forget the queries which were searched once only.
+	 */
+	private void decay() {
+		Iterator<int[]> counts = queryCounts.values().iterator();
+		while (counts.hasNext()) {
+			int[] count = counts.next();
+			count[0] >>= 1;
+			if (count[0] == 0)
+				counts.remove();
+		}
+	}
+
+	/**
+	 * Get the completions of a prefix, the past queries first and then the prefix completed with the words of the
+	 * collection.
+	 *
+	 * @param ixReader the index reader
+	 * @param prefix the typed prefix
+	 * @param max the maximum number of completions
+	 * @return the completions, the most frequent first.
+	 */
+	public String[] complete(IndexReader ixReader, String prefix, int max) {
+		String key = normalize(prefix);
+		if (key.length() == 0 || max <= 0)
+			return new String[0];
+		maybeRebuildQueryIndex();
+
+		Set<String> completions = new LinkedHashSet<String>();
+		for (String query : queryIndex.complete(key, max))
+			completions.add(query);
+
+		// the last word of the prefix is completed, after the words already typed.
+		int lastSpace = key.lastIndexOf(' ');
+		String head = key.substring(0, lastSpace + 1);
+		String word = key.substring(lastSpace + 1);
+		if (word.length() > 0 && completions.size() < max) {
+			for (String completion : getWordIndex(ixReader).complete(word, max)) {
+				completions.add(head + completion);
+				if (completions.size() == max)
+					break;
+			}
+		}
+
+		return completions.toArray(new String[completions.size()]);
+	}
+
+	private void maybeRebuildQueryIndex() {
+		long version;
+		synchronized (queryCounts) {
+			version = queryLogVersion;
+		}
+		if (version == queryIndexVersion || !queryIndexBuilding.compareAndSet(false, true))
+			return;
+
+		wordIndexes.submit(new Runnable() {
+			public void run() {
+				try {
+					Map<String, Integer> counts = new HashMap<String, Integer>();
+					long version;
+					synchronized (queryCounts) {
+						version = queryLogVersion;
+						for (Map.Entry<String, int[]> count : queryCounts.entrySet())
+							counts.put(count.getKey(), Integer.valueOf(count.getValue()[0]));
+					}
+					queryIndex = new CompletionIndex(counts);
+					queryIndexVersion = version;
+				} finally {
+					queryIndexBuilding.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Lower case the text and collapse its white spaces.
+	 */
+	private static String normalize(String text) {
+		if (text == null)
+			return "";
+
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+			} else {
+				if (space)
+					sb.append(' ');
+				sb.append(Character.toLowerCase(c));
+				space = false;
+			}
+		}
+		// a trailing space starts a new word, which is kept so the next word is completed.
+		if (space)
+			sb.append(' ');
+		return sb.toString();
+	}
+}
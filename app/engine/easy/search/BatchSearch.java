@@ -0,0 +1,245 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a BatchSearch class which runs the topics of an evaluation query set and writes their results in the TREC
+ * run format, so the run is evaluated with trec_eval against the relevance judgements of the collection.
+ * </p>
+ *
+ * <p>
+ * The topics file is read in the format of the collection query set: a topic starts with a "*FIND number" line, its
+ * query text follows on the next lines, and the file ends with a "*STOP" line. A file without any "*FIND" line is
+ * read as one query per line, numbered from 1. The queries are searched in parallel on a thread pool, all on the
+ * same acquired reader, so the whole run sees one index generation and the collection statistics are read once.
+ * The run is written in the order of the topics, whatever the order the queries were searched in.
+ * </p>
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Query;
+
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.util.AppConstants;
+
+public class BatchSearch {
+
+	private static final Logger log = Logger.getLogger(BatchSearch.class);
+
+	/** The default number of results of a topic, the depth trec_eval measures at. */
+	public static final int DEFAULT_ROWS = 1000;
+
+	/** The default name of the run. */
+	public static final String DEFAULT_RUN_TAG = "EasySearch";
+
+	private static final String FIND = "*FIND";
+	private static final String STOP = "*STOP";
+
+	private final EasySearchEngine engine;
+	private final int threads;
+	private final int rows;
+	private final QueryEvaluation evaluation;
+
+	public BatchSearch(EasySearchEngine engine, int threads, int rows, QueryEvaluation evaluation) {
+		this.engine = engine;
+		this.threads = Math.max(1, threads);
+		this.rows = Math.max(1, rows);
+		this.evaluation = evaluation;
+	}
+
+	/**
+	 * Read the topics of a query set.
+	 *
+	 * @param topicsFile the topics file
+	 * @return the topics in the file order.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static List<Topic> readTopics(File topicsFile) throws IOException {
+		List<Topic> topics = new ArrayList<Topic>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(topicsFile), AppConstants.UTF_8));
+		try {
+			String id = null;
+			StringBuilder text = new StringBuilder();
+			int lineNumber = 0;
+			String nextLine;
+			while ((nextLine = br.readLine()) != null) {
+				String line = nextLine.trim();
+				if (line.startsWith(FIND) || line.startsWith(STOP)) {
+					addTopic(topics, id, text);
+					id = line.startsWith(FIND) ? line.substring(FIND.length()).trim() : null;
+					text.setLength(0);
+				} else if (id != null) {
+					text.append(line).append(' ');
+				} else if (line.length() > 0) {
+					// a plain list of queries, one per line.
+					topics.add(new Topic(String.valueOf(++lineNumber), line));
+				}
+			}
+			addTopic(topics, id, text);
+		} finally {
+			br.close();
+		}
+		return topics;
+	}
+
+	private static void addTopic(List<Topic> topics, String id, StringBuilder text) {
+		if (id != null && text.toString().trim().length() > 0)
+			topics.add(new Topic(id, text.toString().trim()));
+	}
+
+	/**
+	 * Search the topics in parallel on the same reader.
+	 *
+	 * @param topics the topics
+	 * @return the results of each topic in the topic order, null for a topic which could not be searched.
+	 * @throws IOException if the index could not be opened.
+	 */
+	public Result[][] search(List<Topic> topics) throws IOException {
+		final EasySearcherManager manager = EasySearcherManager.getInstance();
+		final IndexReader indexReader = manager.acquire();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result[]>> futures = new ArrayList<Future<Result[]>>(topics.size());
+			for (final Topic topic : topics) {
+				futures.add(executor.submit(new Callable<Result[]>() {
+					public Result[] call() {
+						// lower cased, so the words AND, OR and NOT of an upper case topic are not parsed as operators.
+						Query query = engine.getQuery(QueryParser.escape(topic.text.toLowerCase()));
+						if (query == null)
+							return null;
+						// the index reader wrapper caches the last document length column, so each query has its own.
+						return engine.getResults(query, indexReader, new EasySearchIndexReader(indexReader), null, evaluation, 0, rows, null);
+					}
+				}));
+			}
+
+			Result[][] results = new Result[topics.size()][];
+			for (int i = 0; i < results.length; i++) {
+				try {
+					results[i] = futures.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while searching the topic " + topics.get(i).id);
+				} catch (ExecutionException e) {
+					log.error("search failed for the topic " + topics.get(i).id, e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+			EasySearchEngine.release(manager, indexReader);
+		}
+	}
+
+	/**
+	 * Write the results in the TREC run format: topic, Q0, document id, rank, score and run name.
+	 *
+	 * @param topics the topics
+	 * @param results the results of each topic
+	 * @param runTag the name of the run
+	 * @param out the run output
+	 * @throws IOException if the run could not be written.
+	 */
+	public static void writeRun(List<Topic> topics, Result[][] results, String runTag, Writer out) throws IOException {
+		for (int i = 0; i < topics.size(); i++) {
+			if (results[i] == null)
+				continue;
+
+			for (int rank = 0; rank < results[i].length; rank++) {
+				Result result = results[i][rank];
+				out.write(topics.get(i).id + " Q0 " + result.docId + " " + (rank + 1) + " " + result.score + " " + runTag + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Search the topics of a query set and write the run, the wall time and the throughput are printed.
+	 *
+	 * @param topicsFile the topics file
+	 * @param runFile the run file
+	 * @param runTag the name of the run
+	 * @throws IOException if a file could not be read or written.
+	 */
+	public void run(File topicsFile, File runFile, String runTag) throws IOException {
+		List<Topic> topics = readTopics(topicsFile);
+
+		long start = System.nanoTime();
+		Result[][] results = search(topics);
+		long elapsed = System.nanoTime() - start;
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(runFile), AppConstants.UTF_8));
+		try {
+			writeRun(topics, results, runTag, out);
+		} finally {
+			out.close();
+		}
+
+		double millis = elapsed / 1000000d;
+		System.out.println(" >> Searched " + topics.size() + " topics with " + threads + " threads (" + evaluation + ") in "
+				+ String.format("%.1f", millis) + " ms, " + String.format("%.1f", topics.size() * 1000d / Math.max(millis, 1e-3)) + " queries/s");
+	}
+
+	/**
+	 * The query of a topic.
+	 */
+	public static class Topic {
+
+		private final String id;
+		private final String text;
+
+		public Topic(String id, String text) {
+			this.id = id;
+			this.text = text;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	/**
+	 * Run a query set: BatchSearch topicsFile runFile [threads] [rows] [evaluation] [runTag]
+	 */
+	public static void main(String[] args) {
+
+		if (args.length < 2) {
+			System.out.println("Usage: BatchSearch topicsFile runFile [threads] [rows] [evaluation] [runTag]");
+			return;
+		}
+
+		try {
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			int rows = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ROWS;
+			QueryEvaluation evaluation = QueryEvaluation.parse(args.length > 4 ? args[4] : null);
+			String runTag = args.length > 5 ? args[5] : DEFAULT_RUN_TAG;
+
+			new BatchSearch(new EasySearchEngine(), threads, rows, evaluation).run(new File(args[0]), new File(args[1]), runTag);
+		} catch (Exception e) {
+			log.error("BatchSearch failed", e);
+		}
+		System.exit(0);
+	}
+}
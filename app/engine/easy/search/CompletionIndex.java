@@ -0,0 +1,134 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a CompletionIndex class which finds the most frequent completions of a prefix in an immutable weighted
+ * list of keys.
+ * </p>
+ *
+ * <p>
+ * The keys are kept sorted in one array, so the completions of a prefix are a contiguous range found by two binary
+ * searches. A tree over the weights keeps the heaviest key of every range, so the top completions are taken from the
+ * range heaviest first, without scanning it, whatever the number of keys sharing the prefix. The index is never
+ * changed once built, so it is read without any lock.
+ * </p>
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+class CompletionIndex {
+
+	/** The empty index. */
+	static final CompletionIndex EMPTY = new CompletionIndex(Collections.<String, Integer> emptyMap());
+
+	private final String[] keys;
+	private final int[] weights;
+	private final int[] tree; // tree[size + i] = i, tree[node] = the heavier key of its two children.
+
+	/**
+	 * Build the index of the keys.
+	 *
+	 * @param keyWeights the weight of each key
+	 */
+	CompletionIndex(Map<String, Integer> keyWeights) {
+		keys = keyWeights.keySet().toArray(new String[keyWeights.size()]);
+		Arrays.sort(keys);
+		weights = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			weights[i] = keyWeights.get(keys[i]).intValue();
+		tree = new int[keys.length << 1];
+		buildTree();
+	}
+
+	private void buildTree() {
+		int size = keys.length;
+		for (int i = 0; i < size; i++)
+			tree[size + i] = i;
+		for (int node = size - 1; node > 0; node--)
+			tree[node] = heavier(tree[node << 1], tree[(node << 1) + 1]);
+	}
+
+	/**
+	 * Get the heaviest completions of a prefix.
+	 *
+	 * @param prefix the prefix
+	 * @param max the maximum number of completions
+	 * @return the completions, the heaviest first and a tie in the key order.
+	 */
+	String[] complete(String prefix, int max) {
+		int from = lowerBound(prefix);
+		int to = lowerBound(prefix + Character.MAX_VALUE);
+		if (from >= to || max <= 0)
+			return new String[0];
+
+		// best first over the ranges split at their heaviest key.
+		String[] completions = new String[Math.min(max, to - from)];
+		PriorityQueue<int[]> ranges = new PriorityQueue<int[]>(2 * completions.length + 1, new Comparator<int[]>() {
+			public int compare(int[] r1, int[] r2) {
+				return r1[2] == r2[2] ? 0 : heavier(r1[2], r2[2]) == r1[2] ? -1 : 1;
+			}
+		});
+		ranges.add(new int[] { from, to, heaviest(from, to) });
+
+		for (int count = 0; count < completions.length; count++) {
+			int[] range = ranges.poll();
+			int top = range[2];
+			completions[count] = keys[top];
+			if (range[0] < top)
+				ranges.add(new int[] { range[0], top, heaviest(range[0], top) });
+			if (top + 1 < range[1])
+				ranges.add(new int[] { top + 1, range[1], heaviest(top + 1, range[1]) });
+		}
+		return completions;
+	}
+
+	/**
+	 * @return the weight of the key, or 0 if the key is not in the index.
+	 */
+	int weight(String key) {
+		int i = Arrays.binarySearch(keys, key);
+		return i >= 0 ? weights[i] : 0;
+	}
+
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Get the heaviest key of the range [from, to) from the tree.
+	 */
+	private int heaviest(int from, int to) {
+		int best = from;
+		for (int l = from + keys.length, r = to + keys.length; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1)
+				best = heavier(best, tree[l++]);
+			if ((r & 1) == 1)
+				best = heavier(best, tree[--r]);
+		}
+		return best;
+	}
+
+	private int heavier(int i, int j) {
+		if (weights[i] != weights[j])
+			return weights[i] > weights[j] ? i : j;
+		return i < j ? i : j;
+	}
+
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid].compareTo(key) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
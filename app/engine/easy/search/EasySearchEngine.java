@@ -7,9 +7,7 @@ package engine.easy.search;
  * 
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
@@ -19,14 +17,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.commons.collections.comparators.ReverseComparator;
-import org.apache.lucene.analysis.Analyzer;
+import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.analysis.Token;
@@ -34,58 +31,165 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Fragmenter;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
-import org.apache.lucene.search.highlight.TokenSources;
-import org.apache.lucene.search.spell.PlainTextDictionary;
 import org.apache.lucene.search.spell.SpellChecker;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 import org.apache.lucene.index.FilterIndexReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.TermFreqVector;
 
 import com.mysql.jdbc.Buffer;
 
 import engine.easy.analyzer.EasySearchAnalyzer;
+import engine.easy.indexer.reader.CollectionStatistics;
+import engine.easy.indexer.reader.DocLengthColumn;
 import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.indexer.reader.ImpactIndexReader;
+import engine.easy.indexer.reader.TermSuggester;
+import engine.easy.metrics.SearchMetrics;
+import engine.easy.metrics.SearchStage;
 import engine.easy.ranking_model.BM25;
 import engine.easy.util.AppConstants;
+import engine.easy.util.SuggestionSpellService;
 
 public class EasySearchEngine {
 
+	private static final Logger log = Logger.getLogger(EasySearchEngine.class);
+
+	/** The largest number of results of a page. */
+	public static final int MAX_ROWS = 100;
+
+	/** The deepest rank a page starts at by its offset, the deeper pages are reached with the cursor. */
+	public static final int MAX_START = 1000;
+
+	/** The only stored field loaded for the ranked documents. */
+	private static final FieldSelector DOCID_SELECTOR = new MapFieldSelector(new String[] { "DOCID" });
+
 	private SpellChecker spellChecker;
+	private BM25 rankingModel = new BM25();
+	private final ResultCache resultCache = new ResultCache();
+	private final AutoCompleter autoCompleter = new AutoCompleter();
+	private final SnippetGenerator snippetGenerator = new SnippetGenerator();
+	private volatile QueryWarmer queryWarmer;
 
 	public EasySearchEngine() {
 		this.spellChecker = getSpecSpellChecker();
 	}
 
+	/**
+	 * Set the BM25 ranking model used to score the queries.
+	 * 
+	 * @param rankingModel the BM25 model with its k_1 and b parameters
+	 */
+	public void setRankingModel(BM25 rankingModel) {
+		this.rankingModel = rankingModel;
+		this.resultCache.clear();
+	}
+
+	public BM25 getRankingModel() {
+		return rankingModel;
+	}
+
+	/**
+	 * Get the cache of the ranked results of the recent queries.
+	 * 
+	 * @return the result cache with its hit and miss counters
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Warm each reopened reader up with a sample of the recent queries before it is published, and with its index
+	 * files loaded into the page cache if asked. The sample saved in the index directory by the previous run is
+	 * loaded, so warmUp() replays it on the first reader.
+	 * 
+	 * @param sampleSize the number of recent queries replayed, 0 to replay none
+	 * @param preloadFiles true to load the index files into the page cache
+	 * @return the warmer, which replaces the previous one.
+	 * @throws IOException if the index could not be opened.
+	 */
+	public QueryWarmer enableWarmUp(int sampleSize, boolean preloadFiles) throws IOException {
+		EasySearcherManager manager = EasySearcherManager.getInstance();
+		QueryWarmer warmer = new QueryWarmer(this, sampleSize, preloadFiles, new File(AppConstants.INDEX_DIR_PATH, QueryWarmer.SAMPLE_FILE_NAME));
+		try {
+			warmer.loadSample();
+		} catch (IOException e) {
+			log.error("loadSample failed", e);
+		}
+		if (queryWarmer != null)
+			manager.removeWarmer(queryWarmer);
+		manager.addWarmer(warmer);
+		queryWarmer = warmer;
+		return warmer;
+	}
+
+	/**
+	 * Save the sample of the recent queries, so the next run is warmed up with it.
+	 * 
+	 * @throws IOException if the sample could not be written.
+	 */
+	public void saveWarmUpQueries() throws IOException {
+		QueryWarmer warmer = queryWarmer;
+		if (warmer != null)
+			warmer.saveSample();
+	}
+
+	/**
+	 * Load the structures the searches of the current reader use and the spell checker, so the first requests do not
+	 * pay for them: the collection statistics, the document lengths, the impacts, the term suggester and the word
+	 * completions, then the warm-up queries if enabled.
+	 * 
+	 * @throws IOException if the index could not be read.
+	 */
+	public void warmUp() throws IOException {
+		EasySearcherManager manager = EasySearcherManager.getInstance();
+		IndexReader indexReader = manager.acquire();
+		try {
+			long start = System.currentTimeMillis();
+			CollectionStatistics.getStatistics(indexReader);
+			DocLengthColumn.getColumn(indexReader, AppConstants.CONTENT_FIELD);
+			ImpactIndexReader.getImpactIndex(indexReader);
+			TermSuggester.getSuggester(indexReader);
+			AutoCompleter.awaitPrepared(indexReader);
+			getSpecSpellChecker();
+			QueryWarmer warmer = queryWarmer;
+			if (warmer != null)
+				warmer.warm(indexReader);
+			log.info("Warmed up the index generation " + indexReader.getVersion() + " in " + (System.currentTimeMillis() - start) + " ms");
+		} finally {
+			release(manager, indexReader);
+		}
+	}
+
+	private void recordWarmUpQuery(String query) {
+		QueryWarmer warmer = queryWarmer;
+		if (warmer != null)
+			warmer.recordQuery(query);
+	}
+
 	private SpellChecker getSpecSpellChecker() {
 		SpellChecker spellchecker = null;
 
 		try {
-			File dir = new File(AppConstants.DICTIONARY_INDEX_PATH);
-			Directory directory = FSDirectory.open(dir);
-			spellchecker = new SpellChecker(new RAMDirectory());
-			spellchecker.indexDictionary(new PlainTextDictionary(new File(AppConstants.DICTIONARY_PATH)));
+			// the persistent spell index, built on the first start only.
+			spellchecker = SuggestionSpellService.getSpellChecker();
 
 		} catch (Exception e) {
-			System.out.println("Exception: getSpecSpellChecker" + e.toString());
+			log.error("getSpecSpellChecker failed", e);
 		}
 
 		return spellchecker;
@@ -98,12 +202,86 @@ public class EasySearchEngine {
 				return spellChecker.suggestSimilar(keyword, AppConstants.SPELL_SUGGESTIONS);
 			}
 		} catch (Exception e) {
-			System.out.println("Exception: getSuggestions" + e.toString());
+			log.error("getSuggestions failed", e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Get the spelling suggestions of a keyword from the english dictionary or from the indexed collection. The
+	 * collection suggestions are the index terms close to the analyzed keyword, the most common first.
+	 * 
+	 * @param keyword the given keyword
+	 * @param mode the source of the suggestions
+	 * @return the suggestions, or null if they could not be computed.
+	 */
+	public String[] getSuggestions(String keyword, SuggestionMode mode) throws IOException {
+
+		if (mode != SuggestionMode.COLLECTION)
+			return getSuggestions(keyword);
+
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
+
+		try {
+			String term = analyzeTerm(keyword);
+			if (term == null)
+				return new String[0]; // a stop word.
+
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
+			return TermSuggester.getSuggester(indexReader).suggest(term, AppConstants.SPELL_SUGGESTIONS);
+		} catch (Exception e) {
+			log.error("getSuggestions failed", e);
+		} finally {
+			release(manager, indexReader);
 		}
 
 		return null;
 	}
 
+	/**
+	 * Get the completions of a typed query prefix from the past queries and the words of the collection.
+	 * 
+	 * @param prefix the typed prefix
+	 * @param max the maximum number of completions
+	 * @return the completions, the most frequent first, or null if they could not be computed.
+	 */
+	public String[] getCompletions(String prefix, int max) {
+
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
+
+		try {
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
+			return autoCompleter.complete(indexReader, prefix, max);
+		} catch (Exception e) {
+			log.error("getCompletions failed", e);
+		} finally {
+			release(manager, indexReader);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Analyze a keyword into its index term.
+	 * 
+	 * @return the first term of the keyword, or null if the keyword has no term.
+	 * @throws IOException if the keyword could not be analyzed.
+	 */
+	private static String analyzeTerm(String keyword) throws IOException {
+		TokenStream stream = new EasySearchAnalyzer().tokenStream(AppConstants.CONTENT_FIELD, new StringReader(keyword));
+		TermAttribute termAtt = stream.addAttribute(TermAttribute.class);
+		try {
+			return stream.incrementToken() ? termAtt.term() : null;
+		} finally {
+			stream.close();
+		}
+	}
+
 	/**
 	 * Get the luecene query object for given string query
 	 * 
@@ -111,8 +289,9 @@ public class EasySearchEngine {
 	 * @return Query the lucene query object
 	 * @throws Exception if one is thrown.
 	 */
-	private Query getQuery(String query) {
+	Query getQuery(String query) {
 		Query q = null;
+		long start = System.nanoTime();
 
 		try {
 			QueryParser qparser = new QueryParser(Version.LUCENE_30, AppConstants.CONTENT_FIELD, new EasySearchAnalyzer());
@@ -120,8 +299,9 @@ public class EasySearchEngine {
 			// now you can use the query parser to parse the query.
 			q = qparser.parse(query);
 		} catch (Exception e) {
-			System.out.println("Exception: " + e.toString());
+			log.error("getQuery failed", e);
 		}
+		SearchMetrics.record(SearchStage.PARSE, System.nanoTime() - start);
 
 		return q;
 	}
@@ -135,8 +315,42 @@ public class EasySearchEngine {
 	 */
 	public Result[] performSearch(String query) {
 
+		return performSearch(query, QueryEvaluation.EXHAUSTIVE);
+	}
+
+	/**
+	 * Perform the search for given query with the given evaluation mode
+	 * 
+	 * @param query the given string query
+	 * @param evaluation the query evaluation mode
+	 * @return the list of highest ranked results.
+	 * @throws Exception if one is thrown.
+	 */
+	public Result[] performSearch(String query, QueryEvaluation evaluation) {
+
+		return performSearch(query, evaluation, 0, AppConstants.TOP_RESULTS, null);
+	}
+
+	/**
+	 * Perform the search for a page of the results of given query. The next page is searched after the cursor of
+	 * the last result of a page (see SearchCursor), the start is only used to skip the first results without one.
+	 * 
+	 * @param query the given string query
+	 * @param evaluation the query evaluation mode
+	 * @param start the rank of the first result of the page, from 0 and at most MAX_START
+	 * @param rows the number of results of the page, at most MAX_ROWS
+	 * @param after the cursor of the previous page, may be null
+	 * @return the results of the page.
+	 */
+	public Result[] performSearch(String query, QueryEvaluation evaluation, int start, int rows, SearchCursor after) {
+
+		if (start == 0 && after == null) {
+			// a query is logged once, not for each of its pages.
+			autoCompleter.recordQuery(query);
+			recordWarmUpQuery(query);
+		}
 		Query q = getQuery(query);
-		return performSearch(q, null);
+		return performSearch(q, null, evaluation, start, rows, after);
 	}
 
 	
@@ -149,27 +363,87 @@ public class EasySearchEngine {
 	 */
 	public Result[] performSearch(Query query, Map<Integer, Float> relevanceDocMap) {
 
+		return performSearch(query, relevanceDocMap, QueryEvaluation.EXHAUSTIVE);
+	}
+
+	/**
+	 * Perform the search for given query with the given evaluation mode
+	 * 
+	 * @param Query the given query
+	 * @param relevanceDocMap the relevance of the user judged documents
+	 * @param evaluation the query evaluation mode
+	 * @return the list of highest ranked results.
+	 * @throws Exception if one is thrown.
+	 */
+	public Result[] performSearch(Query query, Map<Integer, Float> relevanceDocMap, QueryEvaluation evaluation) {
+
+		return performSearch(query, relevanceDocMap, evaluation, 0, AppConstants.TOP_RESULTS, null);
+	}
+
+	/**
+	 * Perform the search for a page of the results of given query with the given evaluation mode
+	 * 
+	 * @param Query the given query
+	 * @param relevanceDocMap the relevance of the user judged documents
+	 * @param evaluation the query evaluation mode
+	 * @param start the rank of the first result of the page, from 0 and at most MAX_START
+	 * @param rows the number of results of the page, at most MAX_ROWS
+	 * @param after the cursor of the previous page, may be null
+	 * @return the results of the page.
+	 */
+	public Result[] performSearch(Query query, Map<Integer, Float> relevanceDocMap, QueryEvaluation evaluation, int start, int rows, SearchCursor after) {
+
 		Result[] results = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 		try {
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-
-			IndexReader indexReader = IndexReader.open(indexDir);
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
 			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
 
-			//System.out.println("\n >> QUERY: " + query.toString());
+			if (log.isDebugEnabled())
+				log.debug("search query=" + query + " evaluation=" + evaluation + " start=" + start + " rows=" + rows + " after=" + after);
+
+			// the results of a repeated query come from the result cache.
+			Term[] terms = queryTerms(query);
+			rows = Math.max(1, Math.min(rows, MAX_ROWS));
+			start = Math.max(0, Math.min(start, MAX_START));
+			String key = ResultCache.key(ResultCache.Mode.PLAIN, evaluation, rankingModel, terms, queryFrequencies(query, terms), relevanceDocMap);
+			key = ResultCache.pageKey(key, start, rows, after);
+			results = resultCache.get(key, indexReader.getVersion());
 
 			// Get the results!!
-			results = getResults(query, indexReader, esiReader, relevanceDocMap);
-			
-			//Display the results!
-			displayResults(results, indexReader);
+			if (results == null) {
+				results = getResults(query, indexReader, esiReader, relevanceDocMap, evaluation, start, rows, after);
+				resultCache.put(key, indexReader.getVersion(), results);
+			}
+
+			// the snippets are only created for the displayed results.
+			snippetGenerator.highlight(results, query, indexReader);
 
 		} catch (Exception e) {
-			System.out.println("Exception: performSearch " + e.toString());
+			log.error("performSearch failed", e);
+		} finally {
+			release(manager, indexReader);
 		}
 
 		return results;
 	}
+
+	/**
+	 * Release the reader back to the searcher manager.
+	 * 
+	 * @param manager the searcher manager
+	 * @param indexReader the acquired reader
+	 */
+	static void release(EasySearcherManager manager, IndexReader indexReader) {
+		try {
+			if (manager != null)
+				manager.release(indexReader);
+		} catch (IOException e) {
+			log.error("release failed", e);
+		}
+	}
 	
 	/**
 	 * Computes the results on ranking function and other scoring factors.
@@ -184,168 +458,162 @@ public class EasySearchEngine {
 	public Result[] getResults(Query query, IndexReader ixReader, 
 			EasySearchIndexReader esiReader, Map<Integer, Float> relevanceDocMap) {
 
-		Map<Integer, Result> results = null;
-
-		try {
-			Set<Term> terms = new HashSet<Term>();
-			query.extractTerms(terms);
-
-			results = new HashMap<Integer, Result>();
-			Iterator<Term> itr = terms.iterator();
-
-			while (itr.hasNext()) {
-				Term term = itr.next();
-
-				TermDocs docs = ixReader.termDocs(term);
-				int docFreq = ixReader.docFreq(term); // get the document frequency of the term from lucene's index reader
-				int docNum = esiReader.recordCount(AppConstants.CONTENT_FIELD); // get the total record of the field from lucene extra index (you may think it is also possible to use ixreader.maxDoc() here, but the ixreader.maxDoc() only returns the number of documents, while some documents may not have the search field (although every document has the search field in this example))
-
-				while (docs.next()) {
-					Integer id = docs.doc(); // get the internal lucene's id of the document
-					int termFreq = docs.freq(); // get the frequency of the term in this document
-					int docLen = esiReader.docLength(id, AppConstants.CONTENT_FIELD); // get the length of the document from lucene extra index.
-					double avgDocLen = esiReader.avgFieldLength(AppConstants.CONTENT_FIELD); // get the average length of the search field from lucene extra index.
-					Document document = ixReader.document(id);	//get the particular document.
-					String storedField = extractData(document.get(AppConstants.CONTENT_FIELD));
-					
-					// Compute the scoring with BM25 ranking and also include other scoring factors such as (relevance feedback based on terms) 
-					BM25 bm25 = new BM25();
-					//System.out.println(bm25.getInfo());
-
-					// Also add the document boost in the ranking score.
-					double termWeight = bm25.score(termFreq, docNum, docLen, avgDocLen, 1d, docFreq);
-					
-					//Add each document relevance score!
-					if (relevanceDocMap != null && !relevanceDocMap.isEmpty() && relevanceDocMap.containsKey(id))
-						termWeight = termWeight * relevanceDocMap.get(id);
-					
-					//System.out.println("lucene id" + id  + " Doc id " + document.getField("DOCID").stringValue() + "wieght" + termWeight);
-					
-					if(results.containsKey(id)){
-						results.get(id).score = results.get(id).score + termWeight;
-					} else{
-						Result result = new Result(new Integer(id), document.getField("DOCID").stringValue(), termWeight, storedField);
-						results.put(id, result);
-					}
-				}
-			}
-
-			return sortArray(results, AppConstants.TOP_RESULTS);
+		return getResults(query, ixReader, esiReader, relevanceDocMap, QueryEvaluation.EXHAUSTIVE);
+	}
 
-		} catch (Exception e) {
-			System.out.println("Exception: getResults " + e.toString());
-		}
+	/**
+	 * Computes the results on ranking function and other scoring factors with the given evaluation mode.
+	 * The dynamic pruning can not bound the user relevance factors, so those queries are scored exhaustively.
+	 * 
+	 * @param terms the query terms
+	 * @param ixReader the index reader
+	 * @param esiReader the custom easy index reader
+	 * @param relevanceDocMap the relevance of the user judged documents
+	 * @param evaluation the query evaluation mode
+	 * @return the Results.
+	 * @throws Exception if one is thrown.
+	 */
+	public Result[] getResults(Query query, IndexReader ixReader, EasySearchIndexReader esiReader, 
+			Map<Integer, Float> relevanceDocMap, QueryEvaluation evaluation) {
 
-		return null;
+		return getResults(query, ixReader, esiReader, relevanceDocMap, evaluation, 0, AppConstants.TOP_RESULTS, null);
 	}
 
-	public String extractData(String text) {
-		
-		StringBuffer sb = new StringBuffer();
-		
+	/**
+	 * Computes a page of the results with the given evaluation mode. A page after a cursor only keeps the documents
+	 * ranked below the cursor, so the heap holds the rows of the page whatever its depth. Without a cursor the heap
+	 * holds the results up to the end of the page, and the results before the start are dropped.
+	 * 
+	 * @param query the given query
+	 * @param ixReader the index reader
+	 * @param esiReader the custom easy index reader
+	 * @param relevanceDocMap the relevance of the user judged documents
+	 * @param evaluation the query evaluation mode
+	 * @param start the rank of the first result of the page, from 0 and at most MAX_START
+	 * @param rows the number of results of the page
+	 * @param after the cursor of the previous page, may be null
+	 * @return the results of the page.
+	 */
+	public Result[] getResults(Query query, IndexReader ixReader, EasySearchIndexReader esiReader, 
+			Map<Integer, Float> relevanceDocMap, QueryEvaluation evaluation, int start, int rows, SearchCursor after) {
+
 		try {
-			if (text != null && !text.isEmpty()) {
-				sb.append(text.substring(0, 150));
-				sb.append("...");
+			rows = Math.max(1, rows);
+			// the heap holds every result up to the page, so the offset is bounded and the deep pages use the cursor.
+			start = after != null ? 0 : Math.max(0, Math.min(start, MAX_START));
+
+			// Compute the scoring with BM25 ranking and also include other scoring factors such as (relevance feedback based on terms) 
+			TopScoreHeap heap = new TopScoreHeap(start + rows, after);
+			boolean hasRelevance = relevanceDocMap != null && !relevanceDocMap.isEmpty();
+
+			Term[] terms = queryTerms(query);
+			double[] queryFrequencies = queryFrequencies(query, terms); // the expansion weights of a feedback query
+
+			if (evaluation == QueryEvaluation.MAX_SCORE && !hasRelevance) {
+				new MaxScoreScorer(rankingModel).score(terms, queryFrequencies, ixReader, esiReader, heap);
+			} else if (evaluation == QueryEvaluation.IMPACT && ImpactScorer.canScore(rankingModel, ImpactIndexReader.getImpactIndex(ixReader))) {
+				new ImpactScorer(rankingModel, ImpactIndexReader.getImpactIndex(ixReader)).score(terms, queryFrequencies, ixReader, relevanceDocMap, heap);
+			} else {
+				// the exact BM25 formula, also the fallback when the impacts were built for other k_1 and b parameters.
+				new TermAtATimeScorer(rankingModel).score(terms, queryFrequencies, ixReader, esiReader, relevanceDocMap, heap);
 			}
-		} catch (Exception e) {
-			// TODO: handle exception
-		}
-		
-		return sb.toString();
-	}
-	
-	public String highlightedText() {
-		
-		try {
-		    Analyzer analyzer = new EasySearchAnalyzer();
 
-		    PhraseQuery phraseQuery = new PhraseQuery();
-		    phraseQuery.add(new Term("CONTENT", "KENNEDY"));
-		    phraseQuery.add(new Term("CONTENT", "ADMINISTRATION"));
+			return toResults(heap, ixReader, start);
 
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-			IndexReader indexReader = IndexReader.open(indexDir);
-			
-		    Query query = getQuery(phraseQuery.toString());
-		    QueryScorer scorer = new QueryScorer(query, AppConstants.CONTENT_FIELD);
-		    Highlighter highlighter = new Highlighter(scorer);
-		    
-			Set<Term> terms = new HashSet<Term>();
-			query.extractTerms(terms);
-			
-			Iterator<Term> itr = terms.iterator();
-			StringBuffer text = new StringBuffer("");
-			
-			while (itr.hasNext()) {
-				Term term = itr.next();
-				TermDocs docs = indexReader.termDocs(term);
-				
-				while (docs.next()) {
-					Integer id = docs.doc(); 
-					Document document = indexReader.document(id);	
-					
-				    TokenStream stream = analyzer.tokenStream("FIELDNAME", new StringReader(text.toString()));
-				    
-				    //Fragmenter fragmenter = new SimpleSpanFragmenter(scorer);
-				    //highlighter.setTextFragmenter(fragmenter);
-				    
-				    //String fragment = highlighter.getBestFragment(analyzer, AppConstants.CONTENT_FIELD, storedField);
-				    //System.out.println(storedField); 
-				}
-			}
 		} catch (Exception e) {
-			System.out.println("Exception: getResults " + e.toString());
+			log.error("getResults failed", e);
 		}
 
 		return null;
 	}
-	
-	
+
 	/**
-	 * Sort the results on highest ranking.
+	 * Get the distinct terms of the query.
 	 * 
-	 * @param results the results map with details.
-	 * @return the sorted results array.
-	 * @throws Exception if one is thrown.
+	 * @param query the given query
+	 * @return the query terms.
+	 */
+	static Term[] queryTerms(Query query) {
+		Set<Term> terms = new HashSet<Term>();
+		query.extractTerms(terms);
+		return terms.toArray(new Term[terms.size()]);
+	}
+
+	/**
+	 * Get the weighted query frequency of each query term, which is fed into the BM25 query part. The weight of
+	 * a term is the sum of the boosts of its clauses, so a plain query term counts once per occurrence and an
+	 * expansion term counts with its feedback weight. The boost of the whole query does not weigh the terms.
+	 * 
+	 * @param query the given query
+	 * @param terms the distinct query terms
+	 * @return the query frequency of each term.
 	 */
-	private Result[] sortArray(Map<Integer, Result> results, int numberOfResults) {
-		Result[] resultArray = new Result[results.values().size()];
-		int pos = 0;
-		for(Result result:results.values()){
-			resultArray[pos] = result;
-			pos++;
+	static double[] queryFrequencies(Query query, Term[] terms) {
+		Map<Term, Double> weights = new HashMap<Term, Double>();
+		addQueryFrequencies(query, 1d, weights);
+
+		double[] queryFrequencies = new double[terms.length];
+		for (int t = 0; t < terms.length; t++) {
+			Double weight = weights.get(terms[t]);
+			queryFrequencies[t] = weight != null ? weight.doubleValue() : 1d;
 		}
+		return queryFrequencies;
+	}
 
-		//Sort the results
-		Arrays.sort(resultArray, new Comparator<Result>(){
-			public int compare(Result r1, Result r2) {
-				if(r1.score < r2.score){
-					return 1;
-				}else if(r1.score > r2.score){
-					return -1;
-				}else{
-					return 0;
-				}
+	private static void addQueryFrequencies(Query query, double weight, Map<Term, Double> weights) {
+		if (query instanceof BooleanQuery) {
+			for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+				if (!clause.isProhibited())
+					addQueryFrequencies(clause.getQuery(), weight * clause.getQuery().getBoost(), weights);
 			}
-		});
-
-		//Top results
-		Result[] topArray = null;
-		if (resultArray.length > numberOfResults) {
-			topArray = new Result[numberOfResults];
+			return;
+		}
 
-			for (int position=0; position < numberOfResults; position++) {
-				topArray[position] = resultArray[position];
-			}
+		Set<Term> terms = new HashSet<Term>();
+		query.extractTerms(terms);
+		for (Term term : terms) {
+			Double sum = weights.get(term);
+			weights.put(term, Double.valueOf(sum != null ? sum.doubleValue() + weight : weight));
 		}
-		else {
-			topArray = resultArray;
+	}
+
+	/**
+	 * Load the document ids of the highest ranked documents only, their snippets are created once they are
+	 * displayed (see SnippetGenerator).
+	 * 
+	 * @param heap the heap with the highest ranked documents
+	 * @param ixReader the index reader
+	 * @param skip the number of highest ranked documents before the page
+	 * @return the results in the highest ranking order.
+	 * @throws IOException if the documents could not be loaded.
+	 */
+	private Result[] toResults(TopScoreHeap heap, IndexReader ixReader, int skip) throws IOException {
+		long start = System.nanoTime();
+		int[] docs = new int[heap.size()];
+		double[] scores = new double[heap.size()];
+		int count = heap.drain(docs, scores);
+
+		Result[] results = new Result[Math.max(0, count - skip)];
+		for (int pos = 0; pos < results.length; pos++) {
+			Document document = ixReader.document(docs[skip + pos], DOCID_SELECTOR);	//get the id of the particular document.
+			results[pos] = new Result(Integer.valueOf(docs[skip + pos]), document.get("DOCID"), scores[skip + pos], null);
 		}
+		SearchMetrics.record(SearchStage.DOCUMENTS, System.nanoTime() - start);
 
-		return topArray;
+		return results;
 	}
 
+	/**
+	 * Get the leading text of a document, the whole text if it is shorter than a snippet.
+	 * 
+	 * @param text the document text
+	 * @return the leading text.
+	 */
+	public String extractData(String text) {
+		
+		return SnippetGenerator.leadingText(text);
+	}
+	
 	/**
 	 * Display the results in highest ranking order
 	 * 
@@ -363,10 +631,11 @@ public class EasySearchEngine {
 				double score = result.score;
 				Document doc = ixReader.document(result.id); // Also, you can get the document from index reader
 				String docid = doc.getField("DOCID").stringValue();
-				//System.out.println("Result No."+(pos+1)+": Lucene id = "+id+", DOCID = "+docid+", score = "+score);
+				if (log.isDebugEnabled())
+					log.debug("result rank=" + (pos + 1) + " id=" + id + " docid=" + docid + " score=" + score);
 			}
 		} catch (Exception e) {
-			System.out.println("Exception - displayResults: " + e.toString());
+			log.error("displayResults failed", e);
 		}
 	}
 
@@ -380,20 +649,54 @@ public class EasySearchEngine {
         
 	public Result[] performPesudoRelevanceFeedback(String q) {
 
+		autoCompleter.recordQuery(q);
+		recordWarmUpQuery(q);
 		Result[] results = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 
 		try {
-			//First perform the raw query, get the results and then perform again on highest terms.
-			results = performSearch(q);
+			// Both searches and the query expansion work on the same reader.
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
+			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
+			long generation = indexReader.getVersion();
+
+			// The expanded query only depends on the raw query and the index generation.
+			Query query = getQuery(q);
+			Term[] terms = queryTerms(query);
+			double[] queryFrequencies = queryFrequencies(query, terms);
+			String key = ResultCache.key(ResultCache.Mode.PSEUDO_RELEVANCE, QueryEvaluation.EXHAUSTIVE, rankingModel, terms, queryFrequencies, null);
+			results = resultCache.get(key, generation);
+			if (results != null) {
+				snippetGenerator.highlight(results, query, indexReader);
+				return results;
+			}
+
+			//First perform the raw query, the results of the same plain search are reused from the cache.
+			String firstKey = ResultCache.key(ResultCache.Mode.PLAIN, QueryEvaluation.EXHAUSTIVE, rankingModel, terms, queryFrequencies, null);
+			Result[] firstResults = resultCache.get(firstKey, generation);
+			if (firstResults == null) {
+				firstResults = getResults(query, indexReader, esiReader, null, QueryEvaluation.EXHAUSTIVE);
+				resultCache.put(firstKey, generation, firstResults);
+			}
 
 			//perform the search again with new formulated query!
-			Query newQuery = RelevanceFeedBackUtil.performPesduoRelevance(results);
+			long start = System.nanoTime();
+			Query newQuery = RelevanceFeedBackUtil.performPesduoRelevance(query, firstResults, indexReader);
+			SearchMetrics.record(SearchStage.FEEDBACK, System.nanoTime() - start);
+			if (log.isDebugEnabled())
+				log.debug("pseudo relevance query=" + newQuery);
 
 			//Get the pesudo relevance results
-			results = performSearch(newQuery, null);
+			results = getResults(newQuery, indexReader, esiReader, null, QueryEvaluation.EXHAUSTIVE);
+			resultCache.put(key, generation, results);
+			snippetGenerator.highlight(results, query, indexReader);
 
 		} catch (Exception e) {
-			System.out.println("Exception - performUserRelevanceFeedback: " + e.toString());
+			log.error("performPesudoRelevanceFeedback failed", e);
+		} finally {
+			release(manager, indexReader);
 		}
 
 		return results;
@@ -402,59 +705,58 @@ public class EasySearchEngine {
    public Result[] performUserRelevanceFeedback(Map<Integer, Float> documents) {
 
 		Result[] results = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 
 		try {
 			if (!documents.isEmpty()) {
+				// The query expansion and the search work on the same reader.
+				manager = EasySearcherManager.getInstance();
+				indexReader = manager.acquire();
+				long generation = indexReader.getVersion();
+
+				// The expanded query only depends on the judged documents and the index generation.
+				String key = ResultCache.key(ResultCache.Mode.USER_RELEVANCE, QueryEvaluation.EXHAUSTIVE, rankingModel, new Term[0], null, documents);
+				results = resultCache.get(key, generation);
+				if (results != null)
+					return results;
+
 				Query q = null;
 
-				q = RelevanceFeedBackUtil.performUpAndDown(documents);
+				long start = System.nanoTime();
+				q = RelevanceFeedBackUtil.performUpAndDown(documents, indexReader);
+				SearchMetrics.record(SearchStage.FEEDBACK, System.nanoTime() - start);
+				if (log.isDebugEnabled())
+					log.debug("user relevance documents=" + documents + " query=" + q);
 				//perform the search again with new formulated query!
-				results = performSearch(q, documents);
+				results = getResults(q, indexReader, new EasySearchIndexReader(indexReader), documents, QueryEvaluation.EXHAUSTIVE);
+				resultCache.put(key, generation, results);
+				snippetGenerator.highlight(results, q, indexReader);
 			}
 		} catch (Exception e) {
-			System.out.println("Exception - performUserRelevanceFeedback: " + e.toString());
+			log.error("performUserRelevanceFeedback failed", e);
+		} finally {
+			release(manager, indexReader);
 		}
 
 		return results;
 	}
 
-   public static void generateScript() {
-	   File file = new File("/Users/Deminem/Desktop/MSC_workspace/Search_Engine/results/queries.txt");
-	   
-	   
-	   
-	   try {
-		   BufferedReader br = new BufferedReader(new FileReader(file));
-		   
-		   Integer counter = 1;
-		   String nextLine;
-		   EasySearchEngine engine = new EasySearchEngine();
-		   
-		   while ((nextLine = br.readLine()) != null) {
-			   if (nextLine.indexOf("*FIND") <= -1 && nextLine.indexOf("*STOP") <= -1) {
-				   System.out.print("\n");
-				   
-				   StringBuffer sb = new StringBuffer(counter.toString() + " ");
-				   
-				   Result[] result = engine.performSearch(nextLine);
-				   for (Result r : result) {
-					  sb.append(" ").append(r.docId);
-				   }
-				   System.out.println(sb.toString());
-				   counter++;
-			   }
-			 
-		   }
-		   br.close();
-		   
-	} catch (Exception e) {
-		// TODO: handle exception
-	}
-	 
-	   
-   }
-   
-   
+	/**
+	 * Search the queries of a query set in parallel and write the results in the TREC run format (see BatchSearch).
+	 * 
+	 * @param topicsPath the query set file
+	 * @param runPath the run file
+	 */
+	public static void generateScript(String topicsPath, String runPath) {
+		try {
+			new BatchSearch(new EasySearchEngine(), Runtime.getRuntime().availableProcessors(), BatchSearch.DEFAULT_ROWS,
+					QueryEvaluation.EXHAUSTIVE).run(new File(topicsPath), new File(runPath), BatchSearch.DEFAULT_RUN_TAG);
+		} catch (Exception e) {
+			log.error("generateScript failed", e);
+		}
+	}
+
 	public static void main (String args[]) {
 
 		try {
@@ -477,8 +779,6 @@ public class EasySearchEngine {
 //			doc.put(80, 6.0F);
 //			engine.performUserRelevanceFeedback(doc);
 
-			//
-			engine.highlightedText();
 			
 			
 		} catch (Exception e) {
@@ -0,0 +1,259 @@
+package engine.easy.search;
+
+/**
+ * This is a EasySearcherManager class which keeps one long-lived index reader open per index directory.
+ *
+ * <p>
+ * The reader is handed out reference-counted, so every caller must pair {@link #acquire()} with
+ * {@link #release(IndexReader)}. A background daemon thread checks the index commit periodically and
+ * swaps in a reopened reader only when the commit has changed. The previous reader is closed once the
+ * last request holding it releases it. The collection statistics of a reader are computed in the background
+ * when the reader is opened, a reopened reader is published once its statistics are ready. The spelling suggester
+ * and the completions of a reader are built in the background as well. The registered warmers run on a reopened
+ * reader before it is published, so the first requests on a new generation do not read a cold index.
+ * </p>
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import engine.easy.indexer.reader.CollectionStatistics;
+import engine.easy.indexer.reader.ImpactIndexReader;
+import engine.easy.indexer.reader.TermSuggester;
+import engine.easy.util.AppConstants;
+
+public class EasySearcherManager {
+
+	private static final Logger log = Logger.getLogger(EasySearcherManager.class);
+
+	/** The interval in milli seconds between two checks of the index commit. */
+	public static final long REOPEN_INTERVAL = 5000L;
+
+	private static final Map<String, EasySearcherManager> managers = new HashMap<String, EasySearcherManager>();
+
+	private final Directory indexDir;
+	private final List<ReaderWarmer> warmers = new CopyOnWriteArrayList<ReaderWarmer>();
+	private IndexReader current;
+	private Thread reopenThread;
+	private volatile boolean closed;
+
+	private EasySearcherManager(String indexDirPath) throws IOException {
+		this.indexDir = FSDirectory.open(new File(indexDirPath));
+		this.current = IndexReader.open(indexDir, true);
+		CollectionStatistics.prepare(current);
+		TermSuggester.prepare(current);
+		AutoCompleter.prepare(current);
+	}
+
+	/**
+	 * Get the shared manager of the default index directory.
+	 *
+	 * @return the shared manager.
+	 * @throws IOException if the index could not be opened.
+	 */
+	public static EasySearcherManager getInstance() throws IOException {
+		return getInstance(AppConstants.INDEX_DIR_PATH);
+	}
+
+	/**
+	 * Get the shared manager for given index directory, the reader is opened on the first call.
+	 *
+	 * @param indexDirPath the index directory path.
+	 * @return the shared manager.
+	 * @throws IOException if the index could not be opened.
+	 */
+	public static EasySearcherManager getInstance(String indexDirPath) throws IOException {
+		String key = new File(indexDirPath).getAbsolutePath();
+
+		synchronized (managers) {
+			EasySearcherManager manager = managers.get(key);
+			if (manager == null) {
+				manager = new EasySearcherManager(indexDirPath);
+				manager.startReopenThread();
+				managers.put(key, manager);
+			}
+			return manager;
+		}
+	}
+
+	/**
+	 * Add a warmer which runs on each reopened reader before it is published.
+	 *
+	 * @param warmer the warmer.
+	 */
+	public void addWarmer(ReaderWarmer warmer) {
+		warmers.add(warmer);
+	}
+
+	public void removeWarmer(ReaderWarmer warmer) {
+		warmers.remove(warmer);
+	}
+
+	/**
+	 * Acquire the current reader, the reader must be released after use.
+	 *
+	 * @return the current index reader with an incremented reference.
+	 */
+	public synchronized IndexReader acquire() {
+		if (closed)
+			throw new IllegalStateException("The searcher manager is closed");
+
+		current.incRef();
+		return current;
+	}
+
+	/**
+	 * Get the version of the index commit of the current reader, which identifies the index generation.
+	 *
+	 * @return the version of the current reader.
+	 */
+	public synchronized long getVersion() {
+		return current.getVersion();
+	}
+
+	/**
+	 * Release the reader acquired from this manager.
+	 *
+	 * @param reader the acquired reader.
+	 * @throws IOException if the reader could not be closed.
+	 */
+	public void release(IndexReader reader) throws IOException {
+		if (reader != null)
+			reader.decRef();
+	}
+
+	/**
+	 * Reopen the reader if the index commit has been changed and publish the new reader.
+	 *
+	 * @return true if a new reader is published.
+	 * @throws IOException if the index could not be reopened.
+	 */
+	public boolean maybeReopen() throws IOException {
+		IndexReader reader = acquire();
+
+		try {
+			if (reader.isCurrent())
+				return false;
+
+			IndexReader newReader = reader.reopen();
+			if (newReader == reader)
+				return false;
+
+			// the collection statistics of the new generation are ready before any request can use the reader.
+			try {
+				CollectionStatistics.getStatistics(newReader);
+			} catch (IOException e) {
+				newReader.close();
+				throw e;
+			}
+
+			// the impacts are loaded before the reader is published if the sidecar of the new commit is already written.
+			try {
+				ImpactIndexReader.getImpactIndex(newReader);
+			} catch (IOException e) {
+				log.error("getImpactIndex failed", e);
+			}
+
+			// the suggester and the completions of the previous generation serve the requests until the new ones are built.
+			TermSuggester.prepare(newReader);
+			AutoCompleter.prepare(newReader);
+
+			// a reader which could not be warmed up is published all the same, it is only slower at first.
+			for (ReaderWarmer warmer : warmers) {
+				try {
+					warmer.warm(newReader);
+				} catch (Exception e) {
+					log.error("warm failed", e);
+				}
+			}
+
+			swap(newReader);
+			return true;
+		} finally {
+			release(reader);
+		}
+	}
+
+	private void swap(IndexReader newReader) throws IOException {
+		IndexReader old;
+
+		synchronized (this) {
+			if (closed) {
+				newReader.close();
+				return;
+			}
+			old = current;
+			current = newReader;
+		}
+
+		// the old reader is closed once the last request holding it releases it.
+		release(old);
+	}
+
+	private void startReopenThread() {
+		reopenThread = new Thread("EasySearcherManager-reopen") {
+			public void run() {
+				while (!closed) {
+					try {
+						Thread.sleep(REOPEN_INTERVAL);
+						maybeReopen();
+					} catch (InterruptedException e) {
+						return;
+					} catch (Exception e) {
+						log.error("maybeReopen failed", e);
+					}
+				}
+			}
+		};
+		reopenThread.setDaemon(true);
+		reopenThread.start();
+	}
+
+	/**
+	 * Close the manager, the current reader is closed once the last request releases it.
+	 *
+	 * @throws IOException if the reader could not be closed.
+	 */
+	public void close() throws IOException {
+		IndexReader old;
+
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			old = current;
+		}
+
+		synchronized (managers) {
+			managers.values().remove(this);
+		}
+
+		reopenThread.interrupt();
+		release(old);
+		indexDir.close();
+	}
+
+	/**
+	 * A warmer of the reopened readers, which loads what the first requests on the new reader would read.
+	 */
+	public interface ReaderWarmer {
+
+		/**
+		 * Warm the reader up, the reader is not published yet.
+		 *
+		 * @param reader the reopened reader.
+		 * @throws IOException if the reader could not be read.
+		 */
+		void warm(IndexReader reader) throws IOException;
+	}
+}
@@ -0,0 +1,109 @@
+package engine.easy.search;
+
+/**
+ * This is a ImpactScorer class which scores a query by summing the BM25 impacts precomputed at indexing time.
+ * No BM25 formula, document length or document frequency is computed at query time, the impacts are added
+ * one term at a time into the ScoreAccumulator and the highest ranked documents are picked with a TopScoreHeap.
+ *
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+import engine.easy.indexer.reader.ImpactIndexReader;
+import engine.easy.metrics.SearchMetrics;
+import engine.easy.metrics.SearchStage;
+import engine.easy.ranking_model.BM25;
+import engine.easy.util.AppConstants;
+
+public class ImpactScorer {
+
+	private final BM25 bm25;
+	private final ImpactIndexReader impactIndex;
+
+	public ImpactScorer(BM25 bm25, ImpactIndexReader impactIndex) {
+		this.bm25 = bm25;
+		this.impactIndex = impactIndex;
+	}
+
+	/**
+	 * Check if the impacts can score the queries of given BM25 parameters.
+	 *
+	 * @param bm25 the BM25 parameters of the query
+	 * @param impactIndex the impacts of the reader, may be null
+	 * @return true if the impacts were built with the same k_1 and b.
+	 */
+	public static boolean canScore(BM25 bm25, ImpactIndexReader impactIndex) {
+		return impactIndex != null && impactIndex.isBuiltWith(bm25.getK1(), bm25.getParameter());
+	}
+
+	/**
+	 * Score the documents matching any of the query terms and keep the highest ranked ones.
+	 *
+	 * @param terms the query terms
+	 * @param queryFrequencies the weighted query frequency of each term
+	 * @param ixReader the index reader
+	 * @param relevanceDocMap the relevance of the user judged documents, may be null
+	 * @param heap the heap which collects the highest ranked documents
+	 */
+	public void score(Term[] terms, double[] queryFrequencies, IndexReader ixReader, Map<Integer, Float> relevanceDocMap, TopScoreHeap heap) {
+
+		ScoreAccumulator acc = ScoreAccumulator.forThread();
+		acc.ensureCapacity(ixReader.maxDoc());
+		double[] scores = acc.scores;
+		boolean[] matched = acc.matched;
+
+		boolean hasRelevance = relevanceDocMap != null && !relevanceDocMap.isEmpty();
+
+		long postingsNanos = 0L;
+		long scoringNanos = 0L;
+
+		try {
+			for (int t = 0; t < terms.length; t++) {
+				long start = System.nanoTime();
+				Term term = terms[t];
+				ImpactIndexReader.Postings postings = AppConstants.CONTENT_FIELD.equals(term.field()) ? impactIndex.postings(term.text()) : null;
+				long opened = System.nanoTime();
+				postingsNanos += opened - start;
+				if (postings == null)
+					continue;
+
+				double termScale = impactIndex.scale() * bm25.queryWeight(queryFrequencies[t]);
+				int[] docs = postings.docs;
+				short[] impacts = postings.impacts;
+
+				for (int i = 0; i < docs.length; i++) {
+					int id = docs[i];
+					if (!matched[id]) {
+						matched[id] = true;
+						acc.touch(id);
+					}
+					scores[id] += impacts[i] * termScale;
+				}
+				scoringNanos += System.nanoTime() - opened;
+			}
+			SearchMetrics.record(SearchStage.POSTINGS, postingsNanos);
+			SearchMetrics.record(SearchStage.SCORING, scoringNanos);
+
+			long start = System.nanoTime();
+			int[] touched = acc.touched;
+			for (int i = 0; i < acc.touchedCount; i++) {
+				int id = touched[i];
+				double score = scores[id];
+
+				// Add each document relevance score!
+				if (hasRelevance) {
+					Float relevance = relevanceDocMap.get(id);
+					if (relevance != null)
+						score = score * relevance;
+				}
+				heap.insert(id, score);
+			}
+			SearchMetrics.record(SearchStage.TOP_K, System.nanoTime() - start);
+		} finally {
+			acc.clear();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package engine.easy.search;
+
+/**
+ * This is a MaxScoreScorer class which scores a query with BM25 one document at a time and uses the MaxScore
+ * dynamic pruning to skip the postings which cannot enter the top results.
+ *
+ * <p>
+ * Each query term gets an upper bound of its BM25 score from the index statistics. The terms are ordered on
+ * their upper bound, and the lowest terms whose bounds together cannot beat the current K-th score become
+ * non-essential. Only the postings of the essential terms generate candidates, the non-essential postings are
+ * skipped to the candidate and a candidate is dropped as soon as its remaining bound falls below the K-th score.
+ * </p>
+ *
+ * <p>
+ * The score of a kept candidate is summed in the same term order as the TermAtATimeScorer, so both scorers
+ * return exactly the same ranking and scores.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+
+import engine.easy.indexer.reader.DocLengthColumn;
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.indexer.reader.TermCache;
+import engine.easy.metrics.SearchMetrics;
+import engine.easy.metrics.SearchStage;
+import engine.easy.ranking_model.BM25;
+import engine.easy.util.AppConstants;
+
+public class MaxScoreScorer {
+
+	private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/** The relative slack of the pruning decisions, so the rounding of the partial sums never drops a winner. */
+	private static final double PRUNING_SLACK = 1e-9d;
+
+	private final BM25 bm25;
+
+	public MaxScoreScorer(BM25 bm25) {
+		this.bm25 = bm25;
+	}
+
+	/**
+	 * Score the documents matching any of the query terms and keep the highest ranked ones.
+	 *
+	 * @param terms the query terms, the scores are summed in this order
+	 * @param queryFrequencies the weighted query frequency of each term
+	 * @param ixReader the index reader
+	 * @param esiReader the custom easy index reader
+	 * @param heap the heap which collects the highest ranked documents
+	 * @throws IOException if the index could not be read.
+	 */
+	public void score(Term[] terms, double[] queryFrequencies, IndexReader ixReader, EasySearchIndexReader esiReader, TopScoreHeap heap) throws IOException {
+
+		int termCount = terms.length;
+		long start = System.nanoTime();
+		int docNum = esiReader.recordCount(AppConstants.CONTENT_FIELD);
+		double avgDocLen = esiReader.avgFieldLength(AppConstants.CONTENT_FIELD);
+		DocLengthColumn docLengths = DocLengthColumn.getColumn(ixReader, AppConstants.CONTENT_FIELD);
+		SearchMetrics.record(SearchStage.DOC_LENGTH, System.nanoTime() - start);
+
+		TermDocs[] postings = new TermDocs[termCount];
+		int[] current = new int[termCount];
+		double[] idfs = new double[termCount];
+		final double[] upperBounds = new double[termCount];
+		TermCache termCache = TermCache.getTermCache(ixReader);
+
+		try {
+			start = System.nanoTime();
+			for (int t = 0; t < termCount; t++) {
+				TermCache.TermPostings termPostings = termCache.lookup(ixReader, terms[t], docNum);
+				postings[t] = termPostings.termDocs(ixReader);
+				idfs[t] = termPostings.idf();
+				upperBounds[t] = bm25.upperBound(docNum, queryFrequencies[t], termPostings.docFreq());
+				current[t] = postings[t].next() ? postings[t].doc() : NO_MORE_DOCS;
+			}
+			SearchMetrics.record(SearchStage.POSTINGS, System.nanoTime() - start);
+
+			// order the terms on their upper bound, the lowest terms become non-essential first.
+			Integer[] boxed = new Integer[termCount];
+			for (int t = 0; t < termCount; t++)
+				boxed[t] = Integer.valueOf(t);
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				public int compare(Integer t1, Integer t2) {
+					return Double.compare(upperBounds[t1.intValue()], upperBounds[t2.intValue()]);
+				}
+			});
+			int[] order = new int[termCount];
+			double[] cumulativeBounds = new double[termCount + 1]; // cumulativeBounds[i] = sum of the bounds of order[0..i-1]
+			for (int i = 0; i < termCount; i++) {
+				order[i] = boxed[i].intValue();
+				cumulativeBounds[i + 1] = cumulativeBounds[i] + upperBounds[order[i]];
+			}
+
+			double[] contributions = new double[termCount];
+			boolean[] matched = new boolean[termCount];
+			int firstEssential = 0;
+
+			// the top results are collected while the documents are scored.
+			start = System.nanoTime();
+			while (true) {
+				// the next candidate is the lowest document of the essential terms.
+				int candidate = NO_MORE_DOCS;
+				for (int i = firstEssential; i < termCount; i++) {
+					if (current[order[i]] < candidate)
+						candidate = current[order[i]];
+				}
+				if (candidate == NO_MORE_DOCS)
+					break;
+
+				int docLen = docLengths.docLength(candidate);
+				double partial = 0d;
+
+				for (int i = firstEssential; i < termCount; i++) {
+					int t = order[i];
+					if (current[t] == candidate) {
+						contributions[t] = bm25.score(postings[t].freq(), docLen, avgDocLen, queryFrequencies[t], idfs[t]);
+						matched[t] = true;
+						partial += contributions[t];
+						current[t] = postings[t].next() ? postings[t].doc() : NO_MORE_DOCS;
+					}
+				}
+
+				// complete the candidate with the non-essential terms, from the highest bound down.
+				boolean pruned = false;
+				for (int i = firstEssential - 1; i >= 0; i--) {
+					if (cannotEnter(partial + cumulativeBounds[i + 1], heap)) {
+						pruned = true;
+						break;
+					}
+
+					int t = order[i];
+					if (current[t] < candidate)
+						current[t] = postings[t].skipTo(candidate) ? postings[t].doc() : NO_MORE_DOCS;
+					if (current[t] == candidate) {
+						contributions[t] = bm25.score(postings[t].freq(), docLen, avgDocLen, queryFrequencies[t], idfs[t]);
+						matched[t] = true;
+						partial += contributions[t];
+					}
+				}
+
+				if (!pruned) {
+					// sum in the query term order, exactly like the term at a time accumulation.
+					double score = 0d;
+					for (int t = 0; t < termCount; t++) {
+						if (matched[t])
+							score += contributions[t];
+					}
+
+					if (heap.insert(candidate, score)) {
+						while (firstEssential < termCount && cannotEnter(cumulativeBounds[firstEssential + 1], heap))
+							firstEssential++;
+					}
+				}
+
+				Arrays.fill(matched, false);
+			}
+			SearchMetrics.record(SearchStage.SCORING, System.nanoTime() - start);
+		} finally {
+			for (TermDocs docs : postings) {
+				if (docs != null)
+					docs.close();
+			}
+		}
+	}
+
+	/**
+	 * Check if a document with given score bound can not enter the top results. The documents are visited in
+	 * the increasing lucene id order, so a document which only ties with the K-th score can not enter either.
+	 */
+	private static boolean cannotEnter(double bound, TopScoreHeap heap) {
+		if (!heap.isFull())
+			return false;
+
+		double threshold = heap.minScore();
+		return bound + PRUNING_SLACK * (Math.abs(threshold) + 1d) < threshold;
+	}
+}
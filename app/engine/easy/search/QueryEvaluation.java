@@ -0,0 +1,37 @@
+package engine.easy.search;
+
+/**
+ * This is a QueryEvaluation enum which selects how the BM25 scores of a query are evaluated.
+ * The modes differ in the cost of the evaluation, the exhaustive and MaxScore modes return exactly the same ranking.
+ *
+ */
+public enum QueryEvaluation {
+
+	/** Score every posting of every query term, one term at a time. */
+	EXHAUSTIVE,
+
+	/** Score one document at a time and skip the postings which cannot enter the top results (MaxScore). */
+	MAX_SCORE,
+
+	/**
+	 * Sum the BM25 impacts precomputed at indexing time. The impacts are quantized, so the scores are close to the
+	 * exhaustive ones. Falls back to the exhaustive mode when the index has no impacts for the current BM25 parameters.
+	 */
+	IMPACT;
+
+	/**
+	 * Get the evaluation mode for given name, the exhaustive mode is used for an unknown name.
+	 *
+	 * @param name the mode name, case insensitive
+	 * @return the evaluation mode.
+	 */
+	public static QueryEvaluation parse(String name) {
+		if (name != null) {
+			for (QueryEvaluation evaluation : values()) {
+				if (evaluation.name().equalsIgnoreCase(name))
+					return evaluation;
+			}
+		}
+		return EXHAUSTIVE;
+	}
+}
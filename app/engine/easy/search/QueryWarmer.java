@@ -0,0 +1,225 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a QueryWarmer class which warms a new index reader up before it is published, so the first requests on a
+ * new index generation are not answered from cold postings and stored fields.
+ * </p>
+ *
+ * <p>
+ * The warmer keeps a sample of the most recent queries and replays them on the new reader, which reads their
+ * postings, document lengths and document ids once, without touching the result cache. The sample is saved in the
+ * index directory after each warm-up and when the application stops, and loaded again when the application starts,
+ * so the first reader after a restart is warmed up with the queries searched before it. The index files can also be
+ * preloaded: each file is memory mapped and loaded, which asks the operating system to read it into the page cache
+ * at once rather than page by page on the first queries. The mappings are dropped by the garbage collector, the
+ * pages stay in the page cache.
+ * </p>
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.util.AppConstants;
+
+public class QueryWarmer implements EasySearcherManager.ReaderWarmer {
+
+	private static final Logger log = Logger.getLogger(QueryWarmer.class);
+
+	/** The default number of recent queries replayed on a new reader. */
+	public static final int DEFAULT_SAMPLE_SIZE = 50;
+
+	/** The file of the index directory the sample of recent queries is saved in. */
+	public static final String SAMPLE_FILE_NAME = "warmup.queries";
+
+	/** The largest part of a file mapped at a time. */
+	private static final long MAX_MAP_SIZE = 1L << 30;
+
+	private final EasySearchEngine engine;
+	private final File sampleFile;
+	private final String[] recentQueries;
+	private int next;
+	private volatile boolean preloadFiles;
+
+	public QueryWarmer(EasySearchEngine engine) {
+		this(engine, DEFAULT_SAMPLE_SIZE, false, null);
+	}
+
+	/**
+	 * Create the warmer.
+	 *
+	 * @param engine the engine the queries are parsed and scored with
+	 * @param sampleSize the number of recent queries replayed
+	 * @param preloadFiles true to load the index files into the page cache
+	 * @param sampleFile the file the sample is saved in, null to keep it in memory only
+	 */
+	public QueryWarmer(EasySearchEngine engine, int sampleSize, boolean preloadFiles, File sampleFile) {
+		this.engine = engine;
+		this.sampleFile = sampleFile;
+		this.recentQueries = new String[Math.max(0, sampleSize)];
+		this.preloadFiles = preloadFiles;
+	}
+
+	public void setPreloadFiles(boolean preloadFiles) {
+		this.preloadFiles = preloadFiles;
+	}
+
+	/**
+	 * Record a searched query, the oldest query of the sample is replaced.
+	 *
+	 * @param query the raw query
+	 */
+	public void recordQuery(String query) {
+		if (query == null || recentQueries.length == 0)
+			return;
+
+		synchronized (recentQueries) {
+			recentQueries[next] = query;
+			next = (next + 1) % recentQueries.length;
+		}
+	}
+
+	/**
+	 * @return the distinct recent queries, the most recent first.
+	 */
+	public String[] getRecentQueries() {
+		Set<String> queries = new LinkedHashSet<String>();
+		synchronized (recentQueries) {
+			for (int i = 1; i <= recentQueries.length; i++) {
+				String query = recentQueries[(next - i + recentQueries.length) % recentQueries.length];
+				if (query != null)
+					queries.add(query);
+			}
+		}
+		return queries.toArray(new String[queries.size()]);
+	}
+
+	/**
+	 * Load the sample saved by the previous run, the queries are recorded again from the oldest.
+	 *
+	 * @throws IOException if the sample could not be read.
+	 */
+	public void loadSample() throws IOException {
+		if (sampleFile == null || !sampleFile.exists())
+			return;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sampleFile), AppConstants.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() > 0)
+					recordQuery(line);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Save the sample, the previous sample is replaced once the new one is written.
+	 *
+	 * @throws IOException if the sample could not be written.
+	 */
+	public void saveSample() throws IOException {
+		if (sampleFile == null)
+			return;
+
+		String[] queries = getRecentQueries();
+		File tmp = new File(sampleFile.getPath() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), AppConstants.UTF_8));
+		try {
+			// the oldest query first, so the sample is recorded again in the same order.
+			for (int i = queries.length - 1; i >= 0; i--)
+				writer.write(queries[i].replace('\n', ' ').replace('\r', ' ') + "\n");
+		} finally {
+			writer.close();
+		}
+
+		if (sampleFile.exists() && !sampleFile.delete())
+			throw new IOException("Cannot replace the warm-up queries: " + sampleFile);
+		if (!tmp.renameTo(sampleFile))
+			throw new IOException("Cannot write the warm-up queries: " + sampleFile);
+	}
+
+	/**
+	 * Preload the index files if enabled and replay the recent queries on the reader.
+	 *
+	 * @param ixReader the reader to warm up, not yet published.
+	 * @throws IOException if the index could not be read.
+	 */
+	public void warm(IndexReader ixReader) throws IOException {
+		long start = System.currentTimeMillis();
+		long preloaded = preloadFiles ? preload(ixReader.directory()) : 0L;
+
+		String[] queries = getRecentQueries();
+		EasySearchIndexReader esiReader = new EasySearchIndexReader(ixReader);
+		for (String text : queries) {
+			Query query = engine.getQuery(text);
+			if (query != null)
+				engine.getResults(query, ixReader, esiReader, null, QueryEvaluation.EXHAUSTIVE);
+		}
+
+		log.info("Warmed up the index generation " + ixReader.getVersion() + " with " + queries.length + " queries and "
+				+ (preloaded >> 20) + " MB preloaded in " + (System.currentTimeMillis() - start) + " ms");
+
+		// the sample survives a restart between two reopens.
+		try {
+			saveSample();
+		} catch (IOException e) {
+			log.error("saveSample failed", e);
+		}
+	}
+
+	/**
+	 * Load the files of the index directory into the page cache.
+	 *
+	 * @return the number of bytes loaded.
+	 */
+	private static long preload(Directory directory) throws IOException {
+		if (!(directory instanceof FSDirectory))
+			return 0L; // the index is not on the file system.
+
+		long loaded = 0L;
+		for (String name : directory.listAll()) {
+			File file = new File(((FSDirectory) directory).getFile(), name);
+			try {
+				loaded += preload(file);
+			} catch (IOException e) {
+				// a file of an old commit may be deleted meanwhile.
+				log.debug("preload skipped " + file + ": " + e);
+			}
+		}
+		return loaded;
+	}
+
+	private static long preload(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAX_MAP_SIZE)
+				channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAP_SIZE, size - position)).load();
+			return size;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -3,22 +3,29 @@ package engine.easy.search;
 /**
  * This is a RelevanceFeedBackUtil class which provides a relevance feedback.
  * 
+ * <p>
+ * The term vectors of the feedback documents are merged into a primitive term to weight map on the reader of the
+ * search, and the expansion terms are picked with a bounded heap instead of sorting the whole vocabulary.
+ * </p>
+ * 
+ * <p>
+ * The expansion is weighted: the pseudo relevance feedback builds a relevance model of the top results (RM3) and
+ * interpolates it with the original query, the user relevance feedback moves the query towards the relevant and
+ * away from the non relevant documents (Rocchio). At most numOf expansion terms are kept, and the weight of each
+ * term is carried as the boost of its clause, which the search uses as the BM25 query frequency of the term.
+ * </p>
+ * 
  * Author: Adnan Urooj
  * 
  */
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.comparators.ReverseComparator;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field.TermVector;
+import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
@@ -28,14 +35,22 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 
-import engine.easy.indexer.EasySearchIndexBuilder;
-import engine.easy.indexer.reader.EasySearchIndexReader;
 import engine.easy.util.AppConstants;
 
 public class RelevanceFeedBackUtil {
 
+	private static final Logger log = Logger.getLogger(RelevanceFeedBackUtil.class);
+
+	/** The weight of the original query in the interpolated relevance model (RM3). */
+	public static final double ORIGINAL_QUERY_WEIGHT = 0.5D;
+
+	/** The Rocchio weight of the relevant documents. */
+	public static final double RELEVANT_WEIGHT = 0.75D;
+
+	/** The Rocchio weight of the non relevant documents. */
+	public static final double NON_RELEVANT_WEIGHT = 0.15D;
+
 	/**
 	 * This method will perform the thumbs up action. And generate the new query
 	 * based on top specific highest terms. It also increase the relevant
@@ -45,49 +60,21 @@ public class RelevanceFeedBackUtil {
 	public static Query performThumbsUp(List<Integer> luceneDocIds) throws IOException {
 
 		Query q = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 		
 		try {
-			final Map<String, Integer> frequencyMap = new HashMap<String, Integer>();
-			Map<Integer, Document> documentMap = new HashMap<Integer, Document>();
-			List<String> termsList = new ArrayList<String>();
-
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-			IndexReader indexReader = IndexReader.open(indexDir);
-			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
-			
-			for (Integer docId : luceneDocIds) {
-				
-				TermFreqVector tfv = indexReader.getTermFreqVector(docId, "CONTENT");
-				Document doc = indexReader.document(docId);
-				float boost = doc.getBoost() + AppConstants.THUMBS_UP;
-				doc.setBoost(boost);
-				
-				System.out.print("DOC : "+ docId + " Field : " + tfv.getField() + "\n");
-				
-				for (int i=0; i < tfv.getTermFrequencies().length; i++) {
-					if (!termsList.contains(tfv.getTerms()[i]))
-						termsList.add(tfv.getTerms()[i]);
-					
-					System.out.println("TERM : "+ tfv.getTerms()[i] + " FREQ : " + tfv.getTermFrequencies()[i]);
-					frequencyMap.put(tfv.getTerms()[i], tfv.getTermFrequencies()[i]);
-				}
-				
-				//put the document with doc id.
-				documentMap.put(docId, doc);
-			}
-			
-			//close the index reader;
-			indexReader.close();
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
 			
 			//Boost the terms visibility in documents, so these documents more frequently for specific search terms.
-			q = computeTopTermQuery(termsList, frequencyMap, AppConstants.TOP_DOCUMENTS);
+			q = computeTopTermQuery(topTerms(rocchio(indexReader, uniform(luceneDocIds), null), AppConstants.TOP_DOCUMENTS), AppConstants.TOP_DOCUMENTS);
 			q.setBoost(2.0F);
-			
-			//Update the documents with their boost.
-			//EasySearchIndexBuilder.updateDocuments(documentMap);
 
 		} catch (Exception e) {
-			System.out.println("Exception: performThumbsUp" + e.toString());
+			log.error("performThumbsUp failed", e);
+		} finally {
+			EasySearchEngine.release(manager, indexReader);
 		}
 
 		return q;
@@ -102,105 +89,197 @@ public class RelevanceFeedBackUtil {
 	public static Query performThumbsDown(List<Integer> luceneDocIds) {
 
 		Query q = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 		
 		try {
-			final Map<String, Integer> frequencyMap = new HashMap<String, Integer>();
-			Map<Integer, Document> documentMap = new HashMap<Integer, Document>();
-			List<String> termsList = new ArrayList<String>();
-
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-			IndexReader indexReader = IndexReader.open(indexDir);
-			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
-			
-			for (Integer docId : luceneDocIds) {
-				
-				TermFreqVector tfv = indexReader.getTermFreqVector(docId, "CONTENT");
-				Document doc = indexReader.document(docId);
-				float boost = doc.getBoost() + AppConstants.THUMBS_UP;
-				doc.setBoost(boost);
-				
-				System.out.print("DOC : "+ docId + " Field : " + tfv.getField() + "\n");
-				
-				for (int i=0; i < tfv.getTermFrequencies().length; i++) {
-					if (!termsList.contains(tfv.getTerms()[i]))
-						termsList.add(tfv.getTerms()[i]);
-					
-					System.out.println("TERM : "+ tfv.getTerms()[i] + " FREQ : " + tfv.getTermFrequencies()[i]);
-					frequencyMap.put(tfv.getTerms()[i], tfv.getTermFrequencies()[i]);
-				}
-				
-				//put the document with doc id.
-				documentMap.put(docId, doc);
-			}
-			
-			//close the index reader;
-			indexReader.close();
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
 			
 			//Boost the terms visibility in documents, so these documents more frequently for specific search terms.
-			q = computeTopTermQuery(termsList, frequencyMap, AppConstants.TOP_DOCUMENTS);
+			q = computeTopTermQuery(topTerms(rocchio(indexReader, uniform(luceneDocIds), null), AppConstants.TOP_DOCUMENTS), AppConstants.TOP_DOCUMENTS);
 			q.setBoost(-2.0F);
-			
-			//Update the documents with their boost.
-			//EasySearchIndexBuilder.updateDocuments(documentMap);
 
 		} catch (Exception e) {
-			System.out.println("Exception: performThumbsUp" + e.toString());
+			log.error("performThumbsDown failed", e);
+		} finally {
+			EasySearchEngine.release(manager, indexReader);
 		}
 
 		return q;
 	}
 
 	/**
-	 * This method will perform the thumbs down action. And generate the new
-	 * query based on top specific highest terms. It also decrease the relevant
-	 * document boost so that their ranking is lower in search results for the
-	 * similar terms.
+	 * This method will perform the pseudo relevance feedback. And generate the new
+	 * query based on top specific highest terms of the given results.
 	 */
 	public static Query performPesduoRelevance(Result[] results) {
 
 		Query q = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 		
 		try {
-			final Map<String, Integer> frequencyMap = new HashMap<String, Integer>();
-			Map<Integer, Document> documentMap = new HashMap<Integer, Document>();
-			List<String> termsList = new ArrayList<String>();
-
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-			IndexReader indexReader = IndexReader.open(indexDir);
-			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
-			float boost = 0F;
-			
-			for (Result result : results) {
-				
-				TermFreqVector tfv = indexReader.getTermFreqVector(result.id, AppConstants.CONTENT_FIELD);
-				Document doc = indexReader.document(result.id);
-				boost += doc.getBoost() + AppConstants.THUMBS_UP;
-				
-				System.out.print("DOC : "+ result.id + " Field : " + tfv.getField() + "\n");
-				
-				for (int i=0; i < tfv.getTermFrequencies().length; i++) {
-					if (!termsList.contains(tfv.getTerms()[i]))
-						termsList.add(tfv.getTerms()[i]);
-
-					frequencyMap.put(tfv.getTerms()[i], tfv.getTermFrequencies()[i]);
-				}
-			}
-			
-			//close the index reader;
-			indexReader.close();
-			
-			//Boost the terms visibility in documents, so these documents more frequently for specific search terms.
-			q = computeTopTermQuery(termsList, frequencyMap, AppConstants.TOP_DOCUMENTS);
-			q.setBoost(boost);
-			System.out.print("Query boost : "+ boost);
-			
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
+			q = performPesduoRelevance(null, results, indexReader);
 		} catch (Exception e) {
-			System.out.println("Exception: performThumbsUp" + e.toString());
+			log.error("performPesduoRelevance failed", e);
+		} finally {
+			EasySearchEngine.release(manager, indexReader);
 		}
 
 		return q;
 	}
-	
+
+	/**
+	 * This method will perform the pseudo relevance feedback on the reader the results were searched on.
+	 * 
+	 * @param results the results of the first search
+	 * @param indexReader the reader of the first search
+	 * @return the expanded query.
+	 * @throws IOException if the term vectors could not be read.
+	 */
+	public static Query performPesduoRelevance(Result[] results, IndexReader indexReader) throws IOException {
+		return performPesduoRelevance(null, results, indexReader);
+	}
+
+	/**
+	 * This method will perform the pseudo relevance feedback with the relevance model of the results (RM3). Each
+	 * result weighs its document language model by its score, the top numOf terms of the merged model are
+	 * interpolated with the terms of the original query.
+	 * 
+	 * @param query the original query, or null to search the expansion terms only
+	 * @param results the results of the first search
+	 * @param indexReader the reader of the first search
+	 * @return the expanded query.
+	 * @throws IOException if the term vectors could not be read.
+	 */
+	public static Query performPesduoRelevance(Query query, Result[] results, IndexReader indexReader) throws IOException {
+
+		// the document weights are the normalized scores of the first search, equal if no result scored.
+		double scoreSum = 0D;
+		for (Result result : results)
+			scoreSum += Math.max(result.score, 0F);
+
+		TermWeights relevanceModel = new TermWeights();
+		for (Result result : results) {
+			double docWeight = scoreSum > 0D ? Math.max(result.score, 0F) / scoreSum : 1D / results.length;
+			addDocumentModel(indexReader, result.id, docWeight, relevanceModel);
+		}
+
+		TermWeights expansion = topTerms(relevanceModel, AppConstants.TOP_DOCUMENTS);
+		if (query == null)
+			return computeTopTermQuery(expansion, AppConstants.TOP_DOCUMENTS);
+
+		// interpolate the normalized expansion with the normalized original query.
+		Term[] terms = EasySearchEngine.queryTerms(query);
+		double[] queryFrequencies = EasySearchEngine.queryFrequencies(query, terms);
+		double queryLength = 0D;
+		for (int t = 0; t < terms.length; t++) {
+			if (AppConstants.CONTENT_FIELD.equals(terms[t].field()))
+				queryLength += queryFrequencies[t];
+		}
+
+		TermWeights weights = new TermWeights();
+		for (String term : expansion.topTerms(expansion.size()))
+			weights.add(term, (1D - ORIGINAL_QUERY_WEIGHT) * expansion.get(term));
+		for (int t = 0; t < terms.length; t++) {
+			if (AppConstants.CONTENT_FIELD.equals(terms[t].field()) && queryLength > 0D)
+				weights.add(terms[t].text(), ORIGINAL_QUERY_WEIGHT * queryFrequencies[t] / queryLength);
+		}
+
+		return computeTopTermQuery(weights, weights.size());
+	}
+
+	/**
+	 * Build the Rocchio vector of the judged documents, the mean language model of the relevant documents minus the
+	 * mean language model of the non relevant ones. Only the terms with a positive weight are kept.
+	 * 
+	 * @param indexReader the index reader
+	 * @param relevant the weight of each relevant document
+	 * @param nonRelevant the weight of each non relevant document, may be null
+	 * @return the weights of the terms.
+	 * @throws IOException if the term vectors could not be read.
+	 */
+	private static TermWeights rocchio(IndexReader indexReader, Map<Integer, Float> relevant, Map<Integer, Float> nonRelevant) throws IOException {
+		TermWeights weights = new TermWeights();
+		addCentroid(indexReader, relevant, RELEVANT_WEIGHT, weights);
+		if (nonRelevant != null)
+			addCentroid(indexReader, nonRelevant, -NON_RELEVANT_WEIGHT, weights);
+
+		TermWeights positive = new TermWeights();
+		for (String term : weights.topTerms(weights.size())) {
+			if (weights.get(term) <= 0D)
+				break;
+			positive.put(term, weights.get(term));
+		}
+		return positive;
+	}
+
+	private static void addCentroid(IndexReader indexReader, Map<Integer, Float> docWeights, double weight, TermWeights weights) throws IOException {
+		double weightSum = 0D;
+		for (Float docWeight : docWeights.values())
+			weightSum += Math.abs(docWeight.floatValue());
+		if (weightSum <= 0D)
+			return;
+
+		for (Map.Entry<Integer, Float> doc : docWeights.entrySet())
+			addDocumentModel(indexReader, doc.getKey().intValue(), weight * Math.abs(doc.getValue().floatValue()) / weightSum, weights);
+	}
+
+	private static Map<Integer, Float> uniform(Collection<Integer> docIds) {
+		Map<Integer, Float> docWeights = new HashMap<Integer, Float>();
+		for (Integer docId : docIds)
+			docWeights.put(docId, Float.valueOf(1F));
+		return docWeights;
+	}
+
+	/**
+	 * Add the weighted language model of the content field of a document, the probability of a term in the
+	 * document is its frequency divided by the document length. The frequencies of a term are summed over the
+	 * documents.
+	 */
+	private static void addDocumentModel(IndexReader indexReader, int docId, double weight, TermWeights weights) throws IOException {
+		TermFreqVector tfv = indexReader.getTermFreqVector(docId, AppConstants.CONTENT_FIELD);
+		if (tfv == null || weight == 0D)
+			return;
+
+		String[] terms = tfv.getTerms();
+		int[] termFreqs = tfv.getTermFrequencies();
+		long docLength = 0L;
+		for (int termFreq : termFreqs)
+			docLength += termFreq;
+		if (docLength == 0L)
+			return;
+
+		for (int i = 0; i < terms.length; i++)
+			weights.add(terms[i], weight * termFreqs[i] / docLength);
+	}
+
+	/**
+	 * Keep the numOf highest weighted terms which are not below the cut off ratio of the top term, with their
+	 * weights normalized to sum to one.
+	 */
+	private static TermWeights topTerms(TermWeights weights, int numOf) {
+		TermWeights top = new TermWeights();
+		String[] topTerms = weights.topTerms(numOf);
+		if (topTerms.length == 0 || weights.get(topTerms[0]) <= 0D)
+			return top;
+
+		double topWeight = weights.get(topTerms[0]);
+		double weightSum = 0D;
+		int count = 0;
+		for (; count < topTerms.length; count++) {
+			double weight = weights.get(topTerms[count]);
+			if (weight <= 0D || weight / topWeight < AppConstants.TOP_TERM_CUT_OFF_FREQ)
+				break;
+			weightSum += weight;
+		}
+		for (int i = 0; i < count; i++)
+			top.put(topTerms[i], weights.get(topTerms[i]) / weightSum);
+		return top;
+	}
 	
 	/**
 	 * Computes a term frequency map for the overall index at the specified location.
@@ -215,142 +294,93 @@ public class RelevanceFeedBackUtil {
 	 */
 	private static Query computeTopTermQueryFromDataCollection(Directory ramdir, int numOf) throws Exception {
 		
-		final Map<String, Integer> frequencyMap = new HashMap<String, Integer>();
-		List<String> termlist = new ArrayList<String>();
+		TermWeights frequencies = new TermWeights();
 		IndexReader reader = IndexReader.open(ramdir);
 		
 		TermEnum terms = reader.terms();
 		while (terms.next()) {
 			Term term = terms.term();
-			String termText = term.text();
-			int frequency = reader.docFreq(term);
-			frequencyMap.put(termText, frequency);
-			termlist.add(termText);
+			frequencies.put(term.text(), reader.docFreq(term));
 		}
 		reader.close();
 		
-		return computeTopTermQuery(termlist, frequencyMap, AppConstants.TOP_DOCUMENTS);
+		return computeTopTermQuery(topTerms(frequencies, numOf), numOf);
 	}
 	
 	/**
-	 * Computes a term frequency map for the specific terms at the specified location.
-	 * Builds a Boolean OR query out of the "most frequent" terms in the index
-	 * and returns it. "Most Frequent" is defined as the terms whose frequencies
-	 * are greater than or equal to the topTermCutoff * the frequency of the top
-	 * term, where the topTermCutoff is number between 0 and 1.
+	 * Builds a weighted Boolean OR query out of the numOf highest weighted terms. The boost of a clause is the
+	 * weight of its term relative to the top term, so the top term is searched with the query frequency 1.
 	 * 
-	 * @param ramdir the directory where the index is created.
+	 * @param weights the weights of the terms.
+	 * @param numOf the maximum number of terms.
 	 * @return a Boolean OR query.
-	 * @throws Exception if one is thrown.
 	 */
-	private static Query computeTopTermQuery(List<String> termlist, Map<String, Integer> frequencyMap,
-			int numOf) throws Exception {
-
-		// sort the term map by frequency descending
-		Collections.sort(termlist, new ReverseComparator(new ByValueComparator<String, Integer>(frequencyMap)));
-
-		// retrieve the top terms based on topTermCutoff
-		List<String> topTerms = new ArrayList<String>();
-		float topFreq = -1.0F;
-		for (String term : termlist) {
-			if (topFreq < 0.0F) {
-				// first term, capture the value
-				topFreq = (float) frequencyMap.get(term);
-				topTerms.add(term);
-			} else {
-				// not the first term, compute the ratio and discard if below
-				// topTermCutoff score
-				float ratio = (float) ((float) frequencyMap.get(term) / topFreq);
-				if (ratio >= AppConstants.TOP_TERM_CUT_OFF_FREQ) {
-					topTerms.add(term);
-				} else {
-					break;
-				}
-			}
-		}
-//
-//		//Top results
-//		List<String> topArray = null;
-//		if (topTerms.size() > numOf) {
-//			topArray = new ArrayList<String>(numOf);
-//
-//			for (int position=0; position < numOf; position++) {
-//				topArray.add(topTerms.get(position));
-//			}
-//		}
-//		else {
-//			topArray = topTerms;
-//		}
-
-		StringBuilder termBuf = new StringBuilder();
+	private static Query computeTopTermQuery(TermWeights weights, int numOf) {
+
+		// the highest weighted terms, at most as many as a boolean query can hold.
+		String[] topTerms = weights.topTerms(Math.min(numOf, BooleanQuery.getMaxClauseCount()));
+
 		BooleanQuery q = new BooleanQuery();
+		double topWeight = topTerms.length > 0 ? weights.get(topTerms[0]) : 0D;
 		for (String topTerm : topTerms) {
-			termBuf.append(topTerm).append("(").append(frequencyMap.get(topTerm)).append(");");
-			q.add(new TermQuery(new Term("CONTENT", topTerm)), Occur.SHOULD);
+			double weight = weights.get(topTerm);
+			if (weight <= 0D)
+				break;
+			TermQuery clause = new TermQuery(new Term(AppConstants.CONTENT_FIELD, topTerm));
+			clause.setBoost((float) (weight / topWeight));
+			q.add(clause, Occur.SHOULD);
 		}
-		System.out.println(">>> top terms: " + termBuf.toString());
-		System.out.println(">>> query: " + q.toString());
 		return q;
 	}
-
-	private static class ByValueComparator<K, V extends Comparable<? super V>> implements Comparator<K> {
-
-		private Map<K, V> map = new HashMap<K, V>();
-
-		public ByValueComparator(Map<K, V> map) {
-			this.map = map;
-		}
-
-		public int compare(K k1, K k2) {
-			return map.get(k1).compareTo(map.get(k2));
-		}
-	}
         
 	public static Query performUpAndDown(Map<Integer, Float> docMap) throws IOException {
-		float boost = 0.0F;
-		//String[] Ids = ids.split(",");
 
 		Query q = null;
+		EasySearcherManager manager = null;
+		IndexReader indexReader = null;
 
 		try {
-			final Map<String, Integer> frequencyMap = new HashMap<String, Integer>();
-			Map<Integer, Document> documentMap = new HashMap<Integer, Document>();
-			List<String> termsList = new ArrayList<String>();
-
-			Directory indexDir = FSDirectory.open(new File(AppConstants.INDEX_DIR_PATH));
-			IndexReader indexReader = IndexReader.open(indexDir);
-			EasySearchIndexReader esiReader = new EasySearchIndexReader(indexReader);
+			manager = EasySearcherManager.getInstance();
+			indexReader = manager.acquire();
+			q = performUpAndDown(docMap, indexReader);
+		} catch (Exception e) {
+			log.error("performUpAndDown failed", e);
+		} finally {
+			EasySearchEngine.release(manager, indexReader);
+		}
 
-			for (Integer docId : docMap.keySet()) {
-			
-				TermFreqVector tfv = indexReader.getTermFreqVector(docId, AppConstants.CONTENT_FIELD);
-				Document doc = indexReader.document(docId);				
-				System.out.print("DOC : "+ docId + " Field : " + tfv.getField() + "\n");
-				
-				for (int i=0; i < tfv.getTermFrequencies().length; i++) {
-					if (!termsList.contains(tfv.getTerms()[i]))
-						termsList.add(tfv.getTerms()[i]);
-					
-					System.out.println("TERM : "+ tfv.getTerms()[i] + " FREQ : " + tfv.getTermFrequencies()[i]);
-					frequencyMap.put(tfv.getTerms()[i], tfv.getTermFrequencies()[i]);
-				}
-
-				// put the document with doc id.
-				documentMap.put(docId, doc);
-			}
-
-			// close the index reader;
-			indexReader.close();
-
-			// Boost the terms visibility in documents, so these documents more
-			// frequently for specific search terms.
-			q = computeTopTermQuery(termsList, frequencyMap, AppConstants.TOP_DOCUMENTS);
-			q.setBoost(AppConstants.BOOST);
+		return q;
+	}
 
-		} catch (Exception e) {
-			System.out.println("Exception: performThumbsUp" + e.toString());
+	/**
+	 * This method will perform the user relevance feedback on the reader the judged documents were searched on. The
+	 * documents with a positive relevance are relevant and the ones with a negative relevance are not, the Rocchio
+	 * vector of the judged documents is expanded into its top numOf terms. If no document is relevant, all the
+	 * judged documents are taken as relevant.
+	 * 
+	 * @param docMap the relevance of the user judged documents
+	 * @param indexReader the index reader
+	 * @return the expanded query.
+	 * @throws IOException if the term vectors could not be read.
+	 */
+	public static Query performUpAndDown(Map<Integer, Float> docMap, IndexReader indexReader) throws IOException {
+
+		Map<Integer, Float> relevant = new HashMap<Integer, Float>();
+		Map<Integer, Float> nonRelevant = new HashMap<Integer, Float>();
+		for (Map.Entry<Integer, Float> doc : docMap.entrySet()) {
+			if (doc.getValue().floatValue() > 0F)
+				relevant.put(doc.getKey(), doc.getValue());
+			else if (doc.getValue().floatValue() < 0F)
+				nonRelevant.put(doc.getKey(), doc.getValue());
 		}
 
+		TermWeights weights = relevant.isEmpty() ? rocchio(indexReader, uniform(docMap.keySet()), null)
+				: rocchio(indexReader, relevant, nonRelevant);
+
+		// Boost the terms visibility in documents, so these documents more
+		// frequently for specific search terms.
+		Query q = computeTopTermQuery(topTerms(weights, AppConstants.TOP_DOCUMENTS), AppConstants.TOP_DOCUMENTS);
+		q.setBoost(AppConstants.BOOST);
 		return q;
 	}
 }
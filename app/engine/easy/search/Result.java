@@ -15,6 +15,18 @@ public class Result {
 		this.higlightedText = text;
 	}
 
+	public Integer getId() {
+		return id;
+	}
+
+	public String getDocId() {
+		return docId;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
 	@Override
 	public String toString() {
 		return "Result [id=" + id + ", docId=" + docId + ", score=" + score
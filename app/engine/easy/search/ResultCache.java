@@ -0,0 +1,189 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a ResultCache class which keeps the ranked results of the most recently used queries, so a repeated
+ * query is answered without being scored again.
+ * </p>
+ *
+ * <p>
+ * The key of a query is its search mode, its evaluation mode, the BM25 parameters and its sorted analyzed terms
+ * with their query frequencies, and for the user relevance feedback the judged documents. The ranking only depends
+ * on these, so two queries written differently but analyzed into the same terms share their results. A page
+ * other than the first one is cached under the key of the query with its start or its cursor. The least
+ * recently used query is evicted once the cache is full. The results belong to one index generation, the cache is emptied as soon as a
+ * query sees a newer generation, and the results computed on an older one are never stored.
+ * </p>
+ *
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.Term;
+
+import engine.easy.ranking_model.BM25;
+import engine.easy.util.AppConstants;
+
+public class ResultCache {
+
+	/** The default number of queries kept in the cache. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The search modes of the cached results.
+	 */
+	public enum Mode {
+		PLAIN, PSEUDO_RELEVANCE, USER_RELEVANCE
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<String, Result[]> results;
+	private long generation = Long.MIN_VALUE;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public ResultCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ResultCache(final int capacity) {
+		this.capacity = capacity;
+		this.results = new LinkedHashMap<String, Result[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Result[]> eldest) {
+				return size() > ResultCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Create the key of a query.
+	 *
+	 * @param mode the search mode
+	 * @param evaluation the query evaluation mode
+	 * @param bm25 the ranking model
+	 * @param terms the analyzed query terms
+	 * @param queryFrequencies the weighted query frequency of each term, null if every term counts once
+	 * @param relevanceDocMap the relevance of the user judged documents, may be null
+	 * @return the cache key.
+	 */
+	public static String key(Mode mode, QueryEvaluation evaluation, BM25 bm25, Term[] terms, double[] queryFrequencies, Map<Integer, Float> relevanceDocMap) {
+		String[] texts = new String[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			texts[i] = terms[i].field() + ":" + terms[i].text();
+			if (queryFrequencies != null && queryFrequencies[i] != 1d)
+				texts[i] += "^" + queryFrequencies[i];
+		}
+		Arrays.sort(texts);
+
+		StringBuilder key = new StringBuilder();
+		key.append(mode).append('|').append(evaluation).append('|').append(bm25.getK1()).append(',').append(bm25.getParameter()).append('|');
+		for (String text : texts)
+			key.append(text).append(' ');
+		if (relevanceDocMap != null && !relevanceDocMap.isEmpty())
+			key.append('|').append(new TreeMap<Integer, Float>(relevanceDocMap));
+		return key.toString();
+	}
+
+	/**
+	 * Add the page to the key of a query, the first page of the default size keeps the key of the query.
+	 *
+	 * @param key the query key
+	 * @param start the rank of the first result of the page
+	 * @param rows the number of results of the page
+	 * @param after the cursor of the previous page, may be null
+	 * @return the cache key of the page.
+	 */
+	public static String pageKey(String key, int start, int rows, SearchCursor after) {
+		if (after != null)
+			return key + "|after=" + after + "," + rows;
+		if (start != 0 || rows != AppConstants.TOP_RESULTS)
+			return key + "|start=" + start + "," + rows;
+		return key;
+	}
+
+	/**
+	 * Get the results of a query.
+	 *
+	 * @param key the query key
+	 * @param generation the index generation the query is searched on
+	 * @return a copy of the cached results, or null if the query is not cached for this generation.
+	 */
+	public Result[] get(String key, long generation) {
+		Result[] cached;
+		synchronized (this) {
+			checkGeneration(generation);
+			cached = generation == this.generation ? results.get(key) : null;
+		}
+
+		if (cached == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return cached.clone();
+	}
+
+	/**
+	 * Keep the results of a query.
+	 *
+	 * @param key the query key
+	 * @param generation the index generation the results were computed on
+	 * @param value the results
+	 */
+	public void put(String key, long generation, Result[] value) {
+		if (value == null)
+			return;
+
+		synchronized (this) {
+			checkGeneration(generation);
+			if (generation == this.generation)
+				results.put(key, value.clone());
+		}
+	}
+
+	/**
+	 * Empty the cache when a query sees a newer index generation.
+	 */
+	private void checkGeneration(long generation) {
+		if (generation > this.generation) {
+			results.clear();
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Remove all the cached results, for example when the ranking model changes.
+	 */
+	public synchronized void clear() {
+		results.clear();
+	}
+
+	public synchronized int size() {
+		return results.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the part of the lookups answered by the cache, or 0 before the first lookup.
+	 */
+	public double getHitRate() {
+		long lookups = hits.get() + misses.get();
+		return lookups == 0L ? 0d : (double) hits.get() / lookups;
+	}
+}
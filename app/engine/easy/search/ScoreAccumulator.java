@@ -0,0 +1,52 @@
+package engine.easy.search;
+
+/**
+ * This is a ScoreAccumulator class which keeps the dense score accumulators of one thread, indexed by the lucene id.
+ * The accumulators are reused across the queries and only the touched entries are cleared after a query.
+ *
+ */
+class ScoreAccumulator {
+
+	private static final ThreadLocal<ScoreAccumulator> accumulators = new ThreadLocal<ScoreAccumulator>() {
+		protected ScoreAccumulator initialValue() {
+			return new ScoreAccumulator();
+		}
+	};
+
+	double[] scores = new double[0];
+	boolean[] matched = new boolean[0];
+	int[] touched = new int[64];
+	int touchedCount;
+
+	/**
+	 * @return the accumulators of the current thread.
+	 */
+	static ScoreAccumulator forThread() {
+		return accumulators.get();
+	}
+
+	void ensureCapacity(int maxDoc) {
+		if (scores.length < maxDoc) {
+			scores = new double[maxDoc];
+			matched = new boolean[maxDoc];
+		}
+	}
+
+	void touch(int id) {
+		if (touchedCount == touched.length) {
+			int[] grown = new int[touched.length << 1];
+			System.arraycopy(touched, 0, grown, 0, touchedCount);
+			touched = grown;
+		}
+		touched[touchedCount++] = id;
+	}
+
+	void clear() {
+		for (int i = 0; i < touchedCount; i++) {
+			int id = touched[i];
+			scores[id] = 0d;
+			matched[id] = false;
+		}
+		touchedCount = 0;
+	}
+}
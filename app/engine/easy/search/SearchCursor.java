@@ -0,0 +1,76 @@
+package engine.easy.search;
+
+/**
+ * This is a SearchCursor class which marks the last result of a page, so the next page is searched after it.
+ * The results are ranked on the decreasing score and the increasing lucene id, so the (score, id) pair of the last
+ * result of a page tells exactly which documents are on the next pages, without collecting the previous ones again.
+ * A cursor is not bound to an index generation, after the index changed the next page still starts below its score.
+ *
+ */
+public class SearchCursor {
+
+	private static final char SEPARATOR = '_';
+
+	private final double score;
+	private final int doc;
+
+	public SearchCursor(double score, int doc) {
+		this.score = score;
+		this.doc = doc;
+	}
+
+	/**
+	 * Get the cursor after the last result of a page.
+	 *
+	 * @param page the results of a page
+	 * @return the cursor, or null if the page is empty.
+	 */
+	public static SearchCursor after(Result[] page) {
+		if (page == null || page.length == 0)
+			return null;
+
+		Result last = page[page.length - 1];
+		return new SearchCursor(last.score, last.id.intValue());
+	}
+
+	/**
+	 * Parse a cursor written by {@link #toString()}.
+	 *
+	 * @param text the cursor text
+	 * @return the cursor, or null if the text is not a cursor.
+	 */
+	public static SearchCursor parse(String text) {
+		if (text == null)
+			return null;
+
+		int separator = text.indexOf(SEPARATOR);
+		if (separator <= 0)
+			return null;
+
+		try {
+			double score = Double.parseDouble(text.substring(0, separator));
+			int doc = Integer.parseInt(text.substring(separator + 1));
+			if (Double.isNaN(score) || doc < 0)
+				return null;
+			return new SearchCursor(score, doc);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public int getDoc() {
+		return doc;
+	}
+
+	/**
+	 * @return the cursor text, the score is written exactly so the cursor is parsed back to the same document.
+	 */
+	@Override
+	public String toString() {
+		return Double.toString(score) + SEPARATOR + doc;
+	}
+}
@@ -0,0 +1,147 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a SearchExecutor class which runs the searches of the requests on a bounded pool of threads, so a slow
+ * search never holds a request thread and a burst of requests can not queue without limit.
+ * </p>
+ *
+ * <p>
+ * The searches wait in a queue of a fixed depth, a search submitted while the queue is full is rejected at once, so
+ * the caller answers that the server is busy instead of letting the latency grow. A submitted search has a deadline:
+ * its future is done once the search is finished or the deadline is passed, and a search past its deadline has no
+ * results. A search still waiting in the queue at its deadline never runs, a running one finishes and its results are
+ * discarded: the search thread is never interrupted, since an interrupt during a read closes the file channels the
+ * shared reader reads from.
+ * </p>
+ *
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchExecutor {
+
+	/** The default number of searches waiting for a thread. */
+	public static final int DEFAULT_QUEUE_DEPTH = 64;
+
+	/** The default time a search may take in milli seconds, from its submission. */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 5000L;
+
+	private final ThreadPoolExecutor executor;
+	private final long timeoutNanos;
+
+	public SearchExecutor() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_DEPTH, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Create the executor.
+	 *
+	 * @param threads the number of searches run at the same time
+	 * @param queueDepth the number of searches waiting for a thread
+	 * @param timeoutMillis the time a search may take from its submission
+	 */
+	public SearchExecutor(int threads, int queueDepth, long timeoutMillis) {
+		threads = Math.max(1, threads);
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueDepth)),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "SearchExecutor-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.AbortPolicy());
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	/**
+	 * Submit a search.
+	 *
+	 * @param search the search
+	 * @return the future of the search, done at the latest at the deadline.
+	 * @throws RejectedExecutionException if the queue is full.
+	 */
+	public <T> TimedFuture<T> submit(Callable<T> search) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		return new TimedFuture<T>(executor.submit(search), deadline);
+	}
+
+	/**
+	 * @return the number of searches waiting for a thread.
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of searches running.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * The future of a search with a deadline. It is done when the search is finished or the deadline is passed, the
+	 * result of a search past its deadline is null and the search is cancelled without interrupting it.
+	 */
+	public static class TimedFuture<T> implements Future<T> {
+
+		private final Future<T> search;
+		private final long deadline;
+		private volatile boolean timedOut;
+
+		TimedFuture(Future<T> search, long deadline) {
+			this.search = search;
+			this.deadline = deadline;
+		}
+
+		public boolean isDone() {
+			return search.isDone() || System.nanoTime() - deadline >= 0;
+		}
+
+		public T get() throws InterruptedException, ExecutionException {
+			try {
+				return search.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				timedOut = true;
+				// an interrupted NIO read would close the channel of the shared reader, the late search runs to its end.
+				search.cancel(false);
+				return null;
+			}
+		}
+
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return search.get(timeout, unit);
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return search.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled() {
+			return search.isCancelled();
+		}
+
+		/**
+		 * @return true if the search did not finish before its deadline.
+		 */
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package engine.easy.search;
+
+/**
+ * <p>
+ * This is a SnippetGenerator class which creates the highlighted snippet of a displayed result: the fragment of the
+ * document content which matches the query best, with the matched terms marked.
+ * </p>
+ *
+ * <p>
+ * The snippets are only created for the results which are displayed, after the ranking. The tokens of a document are
+ * read from its term vector with their offsets, so the content is not analyzed again (an index built without the
+ * offsets falls back to analyzing the stored content). The snippets are cached per reader, by the document and the
+ * query terms, so a repeated query or a document returned by several queries with the same terms is highlighted
+ * once.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleFragmenter;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.TokenSources;
+
+import engine.easy.analyzer.EasySearchAnalyzer;
+import engine.easy.metrics.SearchMetrics;
+import engine.easy.metrics.SearchStage;
+import engine.easy.util.AppConstants;
+
+public class SnippetGenerator {
+
+	private static final Logger log = Logger.getLogger(SnippetGenerator.class);
+
+	/** The number of characters of a snippet. */
+	public static final int SNIPPET_SIZE = 150;
+
+	/** The number of snippets cached per reader. */
+	public static final int CACHE_SIZE = 1024;
+
+	/** The marks around a matched term. */
+	public static final String PRE_TAG = "<b>";
+	public static final String POST_TAG = "</b>";
+
+	private static final String ELLIPSIS = "...";
+
+	/** The snippets of each reader, the reader is weakly referenced so the snippets die with the reader. */
+	private static final Map<IndexReader, Map<String, String>> caches = new WeakHashMap<IndexReader, Map<String, String>>();
+
+	private final Analyzer analyzer = new EasySearchAnalyzer();
+	private final FieldSelector contentSelector = new MapFieldSelector(new String[] { AppConstants.CONTENT_FIELD });
+
+	/**
+	 * Set the snippets of the results which have none yet.
+	 *
+	 * @param results the displayed results
+	 * @param query the query the terms of which are highlighted
+	 * @param ixReader the reader the results were searched on
+	 */
+	public void highlight(Result[] results, Query query, IndexReader ixReader) {
+		if (results == null || results.length == 0)
+			return;
+
+		long start = System.nanoTime();
+		String queryKey = queryKey(query);
+		Map<String, String> cache = getCache(ixReader);
+
+		for (Result result : results) {
+			if (result.higlightedText != null)
+				continue;
+
+			String key = result.id + "|" + queryKey;
+			String snippet;
+			synchronized (cache) {
+				snippet = cache.get(key);
+			}
+
+			if (snippet == null) {
+				try {
+					snippet = createSnippet(ixReader, result.id.intValue(), query);
+				} catch (Exception e) {
+					log.error("highlight failed", e);
+					continue;
+				}
+				synchronized (cache) {
+					cache.put(key, snippet);
+				}
+			}
+			result.higlightedText = snippet;
+		}
+		SearchMetrics.record(SearchStage.SNIPPETS, System.nanoTime() - start);
+	}
+
+	/**
+	 * Create the snippet of a document, the leading text of the document if no query term matches it.
+	 *
+	 * @throws IOException if the document could not be read.
+	 */
+	private String createSnippet(IndexReader ixReader, int docId, Query query) throws IOException, InvalidTokenOffsetsException {
+		Document document = ixReader.document(docId, contentSelector);
+		String text = document.get(AppConstants.CONTENT_FIELD);
+		if (text == null)
+			return "";
+
+		Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter(PRE_TAG, POST_TAG), new SimpleHTMLEncoder(),
+				new QueryScorer(query, AppConstants.CONTENT_FIELD));
+		highlighter.setTextFragmenter(new SimpleFragmenter(SNIPPET_SIZE));
+
+		TokenStream tokens = TokenSources.getAnyTokenStream(ixReader, docId, AppConstants.CONTENT_FIELD, document, analyzer);
+		String fragment = highlighter.getBestFragment(tokens, text);
+		if (fragment == null)
+			return SimpleHTMLEncoder.htmlEncode(leadingText(text));
+
+		return fragment.trim() + ELLIPSIS;
+	}
+
+	/**
+	 * Get the first characters of the text.
+	 *
+	 * @param text the document text
+	 * @return the text cut to the snippet size.
+	 */
+	public static String leadingText(String text) {
+		if (text == null)
+			return "";
+		if (text.length() <= SNIPPET_SIZE)
+			return text;
+		return text.substring(0, SNIPPET_SIZE) + ELLIPSIS;
+	}
+
+	private static String queryKey(Query query) {
+		Term[] terms = EasySearchEngine.queryTerms(query);
+		String[] texts = new String[terms.length];
+		for (int i = 0; i < terms.length; i++)
+			texts[i] = terms[i].field() + ":" + terms[i].text();
+		Arrays.sort(texts);
+		return Arrays.toString(texts);
+	}
+
+	private static Map<String, String> getCache(IndexReader ixReader) {
+		synchronized (caches) {
+			Map<String, String> cache = caches.get(ixReader);
+			if (cache == null) {
+				cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+					protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+						return size() > CACHE_SIZE;
+					}
+				};
+				caches.put(ixReader, cache);
+			}
+			return cache;
+		}
+	}
+}
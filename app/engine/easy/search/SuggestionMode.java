@@ -0,0 +1,30 @@
+package engine.easy.search;
+
+/**
+ * This is a SuggestionMode enum which selects where the spelling suggestions of a query term come from.
+ *
+ */
+public enum SuggestionMode {
+
+	/** Suggest the words of the english dictionary. */
+	DICTIONARY,
+
+	/** Suggest the terms of the indexed collection, ranked by their edit distance and document frequency. */
+	COLLECTION;
+
+	/**
+	 * Get the suggestion mode for given name, the dictionary mode is used for an unknown name.
+	 *
+	 * @param name the mode name, case insensitive
+	 * @return the suggestion mode.
+	 */
+	public static SuggestionMode parse(String name) {
+		if (name != null) {
+			for (SuggestionMode mode : values()) {
+				if (mode.name().equalsIgnoreCase(name))
+					return mode;
+			}
+		}
+		return DICTIONARY;
+	}
+}
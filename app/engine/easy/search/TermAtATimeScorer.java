@@ -0,0 +1,118 @@
+package engine.easy.search;
+
+/**
+ * This is a TermAtATimeScorer class which scores a query with BM25 one term at a time.
+ *
+ * <p>
+ * The scores are accumulated into a dense double array indexed by the lucene id, and the highest ranked
+ * documents are picked with a fixed size TopScoreHeap. The ScoreAccumulator is kept per thread and only the
+ * touched entries are cleared, so scoring a query does not allocate per posting or per matching document.
+ * </p>
+ *
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+
+import engine.easy.indexer.reader.DocLengthColumn;
+import engine.easy.indexer.reader.EasySearchIndexReader;
+import engine.easy.indexer.reader.TermCache;
+import engine.easy.metrics.SearchMetrics;
+import engine.easy.metrics.SearchStage;
+import engine.easy.ranking_model.BM25;
+import engine.easy.util.AppConstants;
+
+public class TermAtATimeScorer {
+
+	private final BM25 bm25;
+
+	public TermAtATimeScorer(BM25 bm25) {
+		this.bm25 = bm25;
+	}
+
+	/**
+	 * Score the documents matching any of the query terms and keep the highest ranked ones.
+	 *
+	 * @param terms the query terms
+	 * @param queryFrequencies the weighted query frequency of each term
+	 * @param ixReader the index reader
+	 * @param esiReader the custom easy index reader
+	 * @param relevanceDocMap the relevance of the user judged documents, may be null
+	 * @param heap the heap which collects the highest ranked documents
+	 * @throws IOException if the index could not be read.
+	 */
+	public void score(Term[] terms, double[] queryFrequencies, IndexReader ixReader, EasySearchIndexReader esiReader,
+			Map<Integer, Float> relevanceDocMap, TopScoreHeap heap) throws IOException {
+
+		ScoreAccumulator acc = ScoreAccumulator.forThread();
+		acc.ensureCapacity(ixReader.maxDoc());
+		double[] scores = acc.scores;
+		boolean[] matched = acc.matched;
+
+		boolean hasRelevance = relevanceDocMap != null && !relevanceDocMap.isEmpty();
+		long start = System.nanoTime();
+		int docNum = esiReader.recordCount(AppConstants.CONTENT_FIELD); // the total record of the field from lucene extra index.
+		double avgDocLen = esiReader.avgFieldLength(AppConstants.CONTENT_FIELD); // the average length of the search field from lucene extra index.
+		DocLengthColumn docLengths = DocLengthColumn.getColumn(ixReader, AppConstants.CONTENT_FIELD);
+		SearchMetrics.record(SearchStage.DOC_LENGTH, System.nanoTime() - start);
+
+		TermCache termCache = TermCache.getTermCache(ixReader);
+		long postingsNanos = 0L;
+		long scoringNanos = 0L;
+
+		try {
+			for (int t = 0; t < terms.length; t++) {
+				start = System.nanoTime();
+				// the postings and the idf of a hot term come from the term cache.
+				TermCache.TermPostings termPostings = termCache.lookup(ixReader, terms[t], docNum);
+				double queryFrequency = queryFrequencies[t];
+				TermDocs docs = termPostings.termDocs(ixReader);
+				double idf = termPostings.idf(); // the idf from the document frequency of the term
+				long opened = System.nanoTime();
+				postingsNanos += opened - start;
+
+				try {
+					while (docs.next()) {
+						int id = docs.doc();
+						int termFreq = docs.freq();
+						int docLen = docLengths.docLength(id);
+
+						double termWeight = bm25.score(termFreq, docLen, avgDocLen, queryFrequency, idf);
+
+						// Add each document relevance score!
+						if (hasRelevance) {
+							Float relevance = relevanceDocMap.get(id);
+							if (relevance != null)
+								termWeight = termWeight * relevance;
+						}
+
+						if (!matched[id]) {
+							matched[id] = true;
+							acc.touch(id);
+						}
+						scores[id] += termWeight;
+					}
+				} finally {
+					docs.close();
+				}
+				scoringNanos += System.nanoTime() - opened;
+			}
+			SearchMetrics.record(SearchStage.POSTINGS, postingsNanos);
+			SearchMetrics.record(SearchStage.SCORING, scoringNanos);
+
+			start = System.nanoTime();
+			int[] touched = acc.touched;
+			for (int i = 0; i < acc.touchedCount; i++) {
+				int id = touched[i];
+				heap.insert(id, scores[id]);
+			}
+			SearchMetrics.record(SearchStage.TOP_K, System.nanoTime() - start);
+		} finally {
+			acc.clear();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package engine.easy.search;
+
+/**
+ * This is a TermWeights class which maps the terms of the feedback documents to their weights.
+ *
+ * <p>
+ * The terms and their weights are kept in parallel arrays with open addressing, so merging the term vectors of
+ * the feedback documents allocates nothing per term besides the term text already held by the vectors. The
+ * highest weighted terms are picked with a bounded min-heap, without sorting the whole vocabulary.
+ * </p>
+ *
+ */
+
+class TermWeights {
+
+	private String[] terms = new String[1024];
+	private double[] weights = new double[1024];
+	private int size;
+
+	/**
+	 * Set the weight of a term.
+	 */
+	void put(String term, double weight) {
+		int slot = slot(term);
+		if (terms[slot] == null) {
+			terms[slot] = term;
+			if (++size * 2 > terms.length)
+				rehash();
+			slot = slot(term);
+		}
+		weights[slot] = weight;
+	}
+
+	/**
+	 * Add to the weight of a term, a new term starts from 0.
+	 */
+	void add(String term, double weight) {
+		int slot = slot(term);
+		if (terms[slot] == null) {
+			terms[slot] = term;
+			weights[slot] = weight;
+			if (++size * 2 > terms.length)
+				rehash();
+		} else {
+			weights[slot] += weight;
+		}
+	}
+
+	/**
+	 * @return the weight of the term, or 0 if the term is not in the map.
+	 */
+	double get(String term) {
+		int slot = slot(term);
+		return terms[slot] == null ? 0d : weights[slot];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get the highest weighted terms, a tie is broken on the term text.
+	 *
+	 * @param max the maximum number of terms
+	 * @return the terms in the decreasing weight order.
+	 */
+	String[] topTerms(int max) {
+		int capacity = Math.min(max, size);
+		int[] heap = new int[capacity + 1]; // 1 based min-heap of the slots, the lowest ranked term on top.
+		int count = 0;
+
+		for (int slot = 0; slot < terms.length; slot++) {
+			if (terms[slot] == null)
+				continue;
+
+			if (count < capacity) {
+				heap[++count] = slot;
+				for (int i = count; i > 1 && ranksHigher(heap[i >> 1], heap[i]); i >>= 1)
+					swap(heap, i, i >> 1);
+			} else if (capacity > 0 && ranksHigher(slot, heap[1])) {
+				heap[1] = slot;
+				siftDown(heap, count);
+			}
+		}
+
+		String[] top = new String[count];
+		while (count > 0) {
+			top[count - 1] = terms[heap[1]];
+			heap[1] = heap[count--];
+			siftDown(heap, count);
+		}
+		return top;
+	}
+
+	private void siftDown(int[] heap, int count) {
+		int i = 1;
+		while (true) {
+			int lowest = i;
+			int left = i << 1;
+			if (left <= count && ranksHigher(heap[lowest], heap[left]))
+				lowest = left;
+			if (left + 1 <= count && ranksHigher(heap[lowest], heap[left + 1]))
+				lowest = left + 1;
+			if (lowest == i)
+				return;
+			swap(heap, i, lowest);
+			i = lowest;
+		}
+	}
+
+	private boolean ranksHigher(int slot1, int slot2) {
+		if (weights[slot1] != weights[slot2])
+			return weights[slot1] > weights[slot2];
+		return terms[slot1].compareTo(terms[slot2]) < 0;
+	}
+
+	private static void swap(int[] heap, int i, int j) {
+		int slot = heap[i];
+		heap[i] = heap[j];
+		heap[j] = slot;
+	}
+
+	private int slot(String term) {
+		int mask = terms.length - 1;
+		int h = term.hashCode();
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (terms[slot] != null && !terms[slot].equals(term))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash() {
+		String[] oldTerms = terms;
+		double[] oldWeights = weights;
+		terms = new String[oldTerms.length << 1];
+		weights = new double[oldTerms.length << 1];
+		for (int i = 0; i < oldTerms.length; i++) {
+			if (oldTerms[i] != null) {
+				int slot = slot(oldTerms[i]);
+				terms[slot] = oldTerms[i];
+				weights[slot] = oldWeights[i];
+			}
+		}
+	}
+}
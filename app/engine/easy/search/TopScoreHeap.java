@@ -0,0 +1,150 @@
+package engine.easy.search;
+
+/**
+ * This is a TopScoreHeap class which keeps the K highest scored documents in a fixed size min-heap.
+ * The documents and their scores are kept in primitive arrays, so collecting a candidate never allocates.
+ * Equal scores are ordered on the lower lucene id first, so the ranking is deterministic.
+ * A heap created after a cursor only keeps the documents ranked below the cursor, so a deep page is collected
+ * with a heap of the page size.
+ *
+ */
+public class TopScoreHeap {
+
+	private final int maxSize;
+	private final int[] docs;		// 1 based heap, the weakest document is on the top.
+	private final double[] scores;
+	private int size;
+
+	private final boolean hasAfter;
+	private final int afterDoc;
+	private final double afterScore;
+
+	public TopScoreHeap(int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * Create a heap of the documents ranked below the cursor.
+	 *
+	 * @param maxSize the number of documents kept
+	 * @param after the last document of the previous page, or null for the first page
+	 */
+	public TopScoreHeap(int maxSize, SearchCursor after) {
+		this.maxSize = maxSize;
+		this.docs = new int[maxSize + 1];
+		this.scores = new double[maxSize + 1];
+		this.hasAfter = after != null;
+		this.afterDoc = after != null ? after.getDoc() : 0;
+		this.afterScore = after != null ? after.getScore() : 0d;
+	}
+
+	/**
+	 * Check if the first document ranks higher than the second one.
+	 */
+	public static boolean ranksHigher(int doc1, double score1, int doc2, double score2) {
+		return score1 > score2 || (score1 == score2 && doc1 < doc2);
+	}
+
+	/**
+	 * Insert the document if it ranks into the top documents.
+	 *
+	 * @param doc the lucene id of the document
+	 * @param score the score of the document
+	 * @return true if the document is kept.
+	 */
+	public boolean insert(int doc, double score) {
+		if (hasAfter && !ranksHigher(afterDoc, afterScore, doc, score))
+			return false; // the document was on a previous page.
+
+		if (size < maxSize) {
+			size++;
+			docs[size] = doc;
+			scores[size] = score;
+			upHeap(size);
+			return true;
+		}
+
+		if (maxSize == 0 || !ranksHigher(doc, score, docs[1], scores[1]))
+			return false;
+
+		docs[1] = doc;
+		scores[1] = score;
+		downHeap(1);
+		return true;
+	}
+
+	public boolean isFull() {
+		return size == maxSize;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the score of the weakest kept document, the score a new document has to beat once the heap is full.
+	 */
+	public double minScore() {
+		return size == 0 ? Double.NEGATIVE_INFINITY : scores[1];
+	}
+
+	/**
+	 * @return the lucene id of the weakest kept document.
+	 */
+	public int minDoc() {
+		return size == 0 ? Integer.MAX_VALUE : docs[1];
+	}
+
+	/**
+	 * Empty the heap into the given arrays in the highest ranking order.
+	 *
+	 * @param topDocs the array for the lucene ids, at least of the heap size.
+	 * @param topScores the array for the scores, at least of the heap size.
+	 * @return the number of documents.
+	 */
+	public int drain(int[] topDocs, double[] topScores) {
+		int count = size;
+		for (int pos = count - 1; pos >= 0; pos--) {
+			topDocs[pos] = docs[1];
+			topScores[pos] = scores[1];
+			docs[1] = docs[size];
+			scores[1] = scores[size];
+			size--;
+			if (size > 0)
+				downHeap(1);
+		}
+		return count;
+	}
+
+	private void upHeap(int pos) {
+		int doc = docs[pos];
+		double score = scores[pos];
+		int parent = pos >>> 1;
+		while (parent > 0 && ranksHigher(docs[parent], scores[parent], doc, score)) {
+			docs[pos] = docs[parent];
+			scores[pos] = scores[parent];
+			pos = parent;
+			parent = pos >>> 1;
+		}
+		docs[pos] = doc;
+		scores[pos] = score;
+	}
+
+	private void downHeap(int pos) {
+		int doc = docs[pos];
+		double score = scores[pos];
+		int child = pos << 1;
+		while (child <= size) {
+			if (child < size && ranksHigher(docs[child], scores[child], docs[child + 1], scores[child + 1]))
+				child++;
+			if (!ranksHigher(doc, score, docs[child], scores[child]))
+				break;
+			docs[pos] = docs[child];
+			scores[pos] = scores[child];
+			pos = child;
+			child = pos << 1;
+		}
+		docs[pos] = doc;
+		scores[pos] = score;
+	}
+}
@@ -1,33 +1,181 @@
 package engine.easy.util;
 
+/**
+ * <p>
+ * This is a SuggestionSpellService class which provides the spell checker of the english dictionary.
+ * </p>
+ *
+ * <p>
+ * The spell index is built once into the dictionary index directory and reused by the next starts, it is only built
+ * again when the dictionary file changes. The dictionary the index was built from is recorded by a stamp file of its
+ * size and modification time, which is written after the build, so an interrupted build is done again. The index is
+ * memory mapped on a 64 bit JVM. The spell checker is shared by all the search engines of the JVM.
+ * </p>
+ *
+ */
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
 
-import org.apache.lucene.search.spell.PlainTextDictionary;
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.search.spell.Dictionary;
 import org.apache.lucene.search.spell.SpellChecker;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Constants;
 
 public class SuggestionSpellService {
 
-	public static String[] suggestionTerms (String query) {
-	
-		
+	private static final Logger log = Logger.getLogger(SuggestionSpellService.class);
+
+	/** The file of the spell index recording the dictionary it was built from. */
+	public static final String DICTIONARY_STAMP_FILE_NAME = "dictionary.stamp";
+
+	/** The version of the spell index, a spell index of another version is built again. */
+	private static final int SPELL_INDEX_VERSION = 1;
+
+	/** The separators of the dictionary words. */
+	private static final Pattern WORD_SEPARATOR = Pattern.compile("[\",\\s]+");
+
+	private static SpellChecker spellChecker;
+
+	/**
+	 * Get the shared spell checker of the english dictionary, the spell index is opened on the first call.
+	 *
+	 * @return the spell checker.
+	 * @throws IOException if the file would have any IO operation.
+	 */
+	public static synchronized SpellChecker getSpellChecker() throws IOException {
+		if (spellChecker == null)
+			spellChecker = openSpellChecker(AppConstants.DICTIONARY_PATH, AppConstants.DICTIONARY_INDEX_PATH);
+		return spellChecker;
+	}
+
+	/**
+	 * Open the spell checker on the spell index of the dictionary, the index is built if it does not exist or the
+	 * dictionary changed since it was built.
+	 *
+	 * @param dictionaryPath the dictionary file, a list of quoted words separated by commas or line breaks
+	 * @param indexDirPath the directory of the spell index
+	 * @return the spell checker.
+	 * @throws IOException if the file would have any IO operation.
+	 */
+	public static SpellChecker openSpellChecker(String dictionaryPath, String indexDirPath) throws IOException {
+		File dictionary = new File(dictionaryPath);
+		File indexDir = new File(indexDirPath);
+		File stampFile = new File(indexDir, DICTIONARY_STAMP_FILE_NAME);
+		String stamp = SPELL_INDEX_VERSION + " " + dictionary.length() + " " + dictionary.lastModified();
+
+		Directory directory = Constants.JRE_IS_64BIT ? new MMapDirectory(indexDir) : FSDirectory.open(indexDir);
+		if (stamp.equals(readStamp(stampFile)))
+			return new SpellChecker(directory);
+
+		log.info("Building the spell index of " + dictionaryPath);
+		long start = System.currentTimeMillis();
+
+		// an index of another dictionary, or an unfinished one, is replaced by an empty index first.
+		stampFile.delete();
+		new IndexWriter(directory, new WhitespaceAnalyzer(), Boolean.TRUE, MaxFieldLength.UNLIMITED).close();
+
+		SpellChecker checker = new SpellChecker(directory);
+		checker.indexDictionary(new WordListDictionary(dictionary));
+		writeStamp(stampFile, stamp);
+
+		log.info("Spell index built in " + (System.currentTimeMillis() - start) + " ms");
+		return checker;
+	}
+
+	private static String readStamp(File stampFile) {
+		if (!stampFile.exists())
+			return null;
+
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(stampFile));
+			try {
+				return br.readLine();
+			} finally {
+				br.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void writeStamp(File stampFile, String stamp) throws IOException {
+		File tmp = new File(stampFile.getPath() + ".tmp");
+		Writer writer = new FileWriter(tmp);
+		try {
+			writer.write(stamp);
+		} finally {
+			writer.close();
+		}
+
+		if (!tmp.renameTo(stampFile)) {
+			stampFile.delete();
+			if (!tmp.renameTo(stampFile))
+				throw new IOException("Cannot write the dictionary stamp " + stampFile);
+		}
+	}
+
+	/**
+	 * The dictionary file lists the quoted words separated by commas, many words on a line, which the plain text
+	 * dictionary would read as one word per line.
+	 */
+	private static class WordListDictionary implements Dictionary {
+
+		private final List<String> words = new ArrayList<String>();
+
+		WordListDictionary(File dictionary) throws IOException {
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), AppConstants.UTF_8));
+			try {
+				String nextLine;
+				while ((nextLine = br.readLine()) != null) {
+					for (String word : WORD_SEPARATOR.split(nextLine)) {
+						if (word.length() > 0)
+							words.add(word);
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+
+		public Iterator<String> getWordsIterator() {
+			return words.iterator();
+		}
+	}
+
+	public static String[] suggestionTerms(String query) {
+
+		try {
+			return getSpellChecker().suggestSimilar(query, AppConstants.SPELL_SUGGESTIONS);
+		} catch (Exception e) {
+			log.error("suggestionTerms failed", e);
+		}
+
 		return null;
 	}
-	
+
 	public static void main(String[] args) throws Exception {
-		
-		File dir = new File(AppConstants.DICTIONARY_INDEX_PATH);
-		
-		Directory directory = FSDirectory.open(dir);
-		
-		SpellChecker spellChecker = new SpellChecker(new RAMDirectory());
-		
-		spellChecker.indexDictionary(new PlainTextDictionary(new File(AppConstants.DICTIONARY_PATH)));
-		
+
+		SpellChecker spellChecker = getSpellChecker();
+
 		String wordForSuggestions = "hee";
-		
+
 		int suggestionsNumber = 3;
 
 		String[] suggestions = spellChecker.suggestSimilar(wordForSuggestions, suggestionsNumber);
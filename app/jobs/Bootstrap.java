@@ -0,0 +1,71 @@
+package jobs;
+
+/**
+ * <p>
+ * This is a Bootstrap class which prepares the search engine when the application starts: the index is built if it
+ * does not exist or brought up to date with the data bank, and the structures of the reader and the spell checker
+ * are loaded. The index is warmed up with the queries saved by the previous run, and the reopened readers are
+ * warmed up from then on with the recent queries before they are published.
+ * </p>
+ *
+ * <p>
+ * The job runs once, in the background, so the index is never built by a request and never by two threads at a
+ * time. The application is ready once the job has finished, the requests are answered 503 until then and the
+ * readiness route tells the load balancer when to route to this node.
+ * </p>
+ *
+ */
+
+import controllers.Application;
+import engine.easy.indexer.IncrementalIndexBuilder;
+import engine.easy.search.QueryWarmer;
+import engine.easy.util.AppConstants;
+import play.Logger;
+import play.Play;
+import play.jobs.Job;
+import play.jobs.OnApplicationStart;
+
+@OnApplicationStart(async = true)
+public class Bootstrap extends Job<Void> {
+
+    private static volatile boolean ready;
+    private static volatile String status = "starting";
+
+    @Override
+    public void doJob() {
+        try {
+            long start = System.currentTimeMillis();
+
+            // a failed build throws, so a node without a complete index is never reported ready.
+            status = "indexing";
+            IncrementalIndexBuilder.updateIndexes(AppConstants.DATA_BANK_DIR_PATH, AppConstants.INDEX_DIR_PATH);
+
+            status = "warming";
+            int warmUpQueries = Integer.parseInt(Play.configuration.getProperty("search.warmup.queries", String.valueOf(QueryWarmer.DEFAULT_SAMPLE_SIZE)));
+            boolean preload = Boolean.parseBoolean(Play.configuration.getProperty("search.warmup.preload", "false"));
+            Application.engine.enableWarmUp(warmUpQueries, preload);
+            Application.engine.warmUp();
+
+            status = "ready";
+            ready = true;
+            Logger.info("Search engine ready in %d ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            status = "failed";
+            Logger.error(e, "Cannot prepare the search engine");
+        }
+    }
+
+    /**
+     * @return true once the index is up to date and warm.
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the stage of the startup: starting, indexing, warming, ready or failed.
+     */
+    public static String getStatus() {
+        return status;
+    }
+}
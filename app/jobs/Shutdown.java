@@ -0,0 +1,27 @@
+package jobs;
+
+/**
+ * <p>
+ * This is a Shutdown class which saves the sample of the recent queries when the application stops, so the next
+ * start warms the index up with the queries searched before the restart (see QueryWarmer).
+ * </p>
+ *
+ */
+
+import controllers.Application;
+import play.Logger;
+import play.jobs.Job;
+import play.jobs.OnApplicationStop;
+
+@OnApplicationStop
+public class Shutdown extends Job<Void> {
+
+    @Override
+    public void doJob() {
+        try {
+            Application.engine.saveWarmUpQueries();
+        } catch (Exception e) {
+            Logger.error(e, "Cannot save the warm-up queries");
+        }
+    }
+}
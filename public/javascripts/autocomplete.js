@@ -8,20 +8,36 @@ function autoCompleteDB()
     this.aNames=aList;
  };
  
- autoCompleteDB.prototype.getMatches=function(str,aList,maxSize)
+ autoCompleteDB.prototype.getMatches=function(str,maxSize,fCallback)
  {
-    /* debug */ //alert(maxSize+"ok getmatches");
-    var ctr=0;
-    for(var i in this.aNames)
+    /* the completions are served by the suggest action, one per line. The request is asynchronous
+       and replaces the pending one, so typing never waits for the network. */
+    if(this.oRequest)
+       this.oRequest.abort();
+
+    var oRequest=new XMLHttpRequest();
+    this.oRequest=oRequest;
+    var oThis=this;
+    oRequest.onreadystatechange=function()
     {
-         if(this.aNames[i].toLowerCase().indexOf(str.toLowerCase())==0) /*looking for case insensitive matches */
+       if(oRequest.readyState!=4 || oThis.oRequest!=oRequest)
+          return;
+       oThis.oRequest=null;
+       if(oRequest.status!=200)
+          return;
+
+       var aList=new Array();
+       var aLines=oRequest.responseText.split("\n");
+       for(var i=0;i<aLines.length && aList.length<maxSize;i++)
        {
-          aList.push(this.aNames[i]);
-          ctr++;
+          var sLine=aLines[i].replace(/^\s+|\s+$/g,"");
+          if(sLine.length)
+             aList.push(sLine);
        }
-       if(ctr==(maxSize-1)) /* counter to limit no of matches to maxSize */
-          break;
-    }
+       fCallback(str,aList);
+    };
+    oRequest.open("GET","/suggest?prefix="+encodeURIComponent(str),true);
+    oRequest.send(null);
  };
  
  function autoComplete(aNames,oText,oDiv,maxSize)
@@ -180,56 +196,72 @@ function autoCompleteDB()
     
     if(txt.length>0)
     {
-       while(this.oDiv.hasChildNodes())
-          this.oDiv.removeChild(this.oDiv.firstChild);
-       
-       var aStr=new Array();
-       this.db.getMatches(txt,aStr,this.maxSize);
-       if(!aStr.length) {this.hideSuggest ;return}
-       if(bTextComplete) this.textComplete(aStr[0]);
-       this.positionSuggest();
-       
-       for(i in aStr)
+       this.db.getMatches(txt,this.maxSize,function(sPrefix,aStr)
        {
-          var oNew=document.createElement('div');
-          this.oDiv.appendChild(oNew);
-          oNew.onmouseover=
-          oNew.onmouseout=
-          oNew.onmousedown=function(oEvent)
-          {
-             oEvent=window.event || oEvent;
-             oSrcDiv=oEvent.target || oEvent.srcElement;
- 
-             //debug :window.status=oEvent.type;
-             if(oEvent.type=="mousedown")
-             {
-                oThis.oText.value=this.innerHTML;
-             }
-             else if(oEvent.type=="mouseover")
-             {
-                this.className="over";
-             }
-             else if(oEvent.type=="mouseout")
-             {
-                this.className="";
-             }
-             else
-             {
-                this.oText.focus();
-             }
-          };
-          oNew.innerHTML=aStr[i];
-       }
-       
-       this.oDiv.style.visibility="visible";
+          /* the completions of a prefix which has been typed over are dropped */
+          if(oThis.oText.value==sPrefix)
+             oThis.showMatches(aStr,bTextComplete);
+       });
     }
     else
     {
+       if(this.db.oRequest)
+       {
+          this.db.oRequest.abort();
+          this.db.oRequest=null;
+       }
        this.oDiv.innerHTML="";
        this.oDiv.style.visibility="hidden";
     }
  };
  
+ autoComplete.prototype.showMatches=function(aStr,bTextComplete)
+ {
+    var oThis=this;
+    this.cur=-1;
+
+    while(this.oDiv.hasChildNodes())
+       this.oDiv.removeChild(this.oDiv.firstChild);
+
+    if(!aStr.length) {this.oDiv.style.visibility="hidden";return}
+    if(bTextComplete) this.textComplete(aStr[0]);
+    this.positionSuggest();
+    
+    for(i in aStr)
+    {
+       var oNew=document.createElement('div');
+       this.oDiv.appendChild(oNew);
+       oNew.onmouseover=
+       oNew.onmouseout=
+       oNew.onmousedown=function(oEvent)
+       {
+          oEvent=window.event || oEvent;
+          oSrcDiv=oEvent.target || oEvent.srcElement;
+ 
+          //debug :window.status=oEvent.type;
+          if(oEvent.type=="mousedown")
+          {
+             oThis.oText.value=this.innerHTML;
+          }
+          else if(oEvent.type=="mouseover")
+          {
+             this.className="over";
+          }
+          else if(oEvent.type=="mouseout")
+          {
+             this.className="";
+          }
+          else
+          {
+             this.oText.focus();
+          }
+       };
+       oNew.innerHTML=aStr[i];
+    }
+    
+    this.oDiv.style.visibility="visible";
+ };
+ 
  function createAutoComplete()
  {
  var aNames =